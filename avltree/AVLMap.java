@@ -0,0 +1,210 @@
+/* Ordered map on the AVL engine.
+
+   An AVLMap is an AVLSet of entries ordered by key alone, so it shares
+   all of AVLSet's node, rotation, navigation and range code, and each
+   entry costs one AVLNode plus the Entry itself.  Keeping values in a
+   HashMap beside an AVLSet of keys costs a second node per key and the
+   hash table.
+
+   Lookups by key go down the tree without recursion, like AVLSet.search,
+   using a probe that compares a key to the key of an entry (see
+   AVLSet.find and locate).  put, compute, computeIfAbsent and merge also
+   descend only once: if the key is missing the new entry is linked in
+   where the search ended, and if it's there its value is changed in
+   place.  As in java.util.TreeMap, a function that changes the map while
+   it is computing the value of a new key gets a
+   ConcurrentModificationException.
+
+   Null keys and values are not stored: a function in compute, merge or
+   computeIfAbsent that returns null removes the entry (or doesn't add
+   one), as in java.util.Map.
+*/
+
+package avltree;
+import java.util.Iterator;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.*;
+import java.util.stream.Stream;
+
+public class AVLMap<K extends Comparable<? super K>, V>
+implements Iterable<AVLMap.Entry<K,V>>
+{
+    final Comparator<K> kcmp;
+    final AVLSet<Entry<K,V>> entries;
+
+    public AVLMap() { this(null); }
+    public AVLMap(Comparator<K> kcmp) {
+        this.kcmp = (kcmp!=null) ? kcmp : (x,y) -> x.compareTo(y);
+        entries = new AVLSet<Entry<K,V>>((a,b) -> this.kcmp.compare(a.key,b.key));
+    }
+
+    // compares key to the key of an entry
+    ToIntFunction<Entry<K,V>> probe(K key) { return e -> kcmp.compare(key,e.key); }
+    Entry<K,V> entry(K key, V value) { return new Entry<K,V>(key,value,kcmp); }
+    // an entry that only serves as a key, for the AVLSet methods that take items
+    Entry<K,V> key_only(K key) { return entry(key,null); }
+
+    public int size() { return entries.size(); }
+    public boolean is_empty() { return entries.size()==0; }
+    public int depth() { return entries.depth(); }
+
+    public boolean containsKey(K key) {
+        return key!=null && entries.find(probe(key)) != null;
+    }
+
+    public Optional<V> get(K key) {
+        if (key==null) return Optional.empty();
+        var e = entries.find(probe(key));
+        return (e==null) ? Optional.empty() : Optional.of(e.value);
+    }
+    public V getOrDefault(K key, V default_value) { return get(key).orElse(default_value); }
+
+    // returns the previous value
+    public Optional<V> put(K key, V value) {
+        if (key==null || value==null) return Optional.empty();
+        int prev_size = entries.size;
+        var e = entries.locate(probe(key), () -> entry(key,value));
+        if (entries.size != prev_size) return Optional.empty();  // new entry
+        V old = e.value;
+        e.value = value;
+        return Optional.of(old);
+    }
+
+    // returns the removed value
+    public Optional<V> remove(K key) {
+        if (key==null) return Optional.empty();
+        var e = entries.extract(null,probe(key));
+        return (e==null) ? Optional.empty() : Optional.of(e.value);
+    }
+
+    // returns the value now mapped to key, or null if there is none
+    public V computeIfAbsent(K key, Function<? super K,? extends V> fn) {
+        if (key==null || fn==null) return null;
+        var e = entries.locate(probe(key), () -> {
+            V value = fn.apply(key);
+            return (value==null) ? null : entry(key,value);
+        });
+        return (e==null) ? null : e.value;
+    }
+
+    public V computeIfPresent(K key, BiFunction<? super K,? super V,? extends V> fn) {
+        if (key==null || fn==null) return null;
+        var e = entries.find(probe(key));
+        if (e==null) return null;
+        return update(e, fn.apply(key,e.value));
+    }
+
+    // fn gets null as the old value if key is absent
+    public V compute(K key, BiFunction<? super K,? super V,? extends V> fn) {
+        if (key==null || fn==null) return null;
+        int prev_size = entries.size;
+        var e = entries.locate(probe(key), () -> {
+            V value = fn.apply(key,null);
+            return (value==null) ? null : entry(key,value);
+        });
+        if (e==null) return null;
+        if (entries.size != prev_size) return e.value;  // new entry
+        return update(e, fn.apply(key,e.value));
+    }
+
+    // puts value if key is absent, else replaces the old value by
+    // fn(old value, value)
+    public V merge(K key, V value, BiFunction<? super V,? super V,? extends V> fn) {
+        if (key==null || value==null || fn==null) return null;
+        int prev_size = entries.size;
+        var e = entries.locate(probe(key), () -> entry(key,value));
+        if (entries.size != prev_size) return value;  // new entry
+        return update(e, fn.apply(e.value,value));
+    }
+
+    // sets the value of an existing entry, or removes it if value is null
+    V update(Entry<K,V> e, V value) {
+        if (value==null) entries.remove(e);
+        else e.value = value;
+        return value;
+    }
+
+    ///// ordered access
+
+    public Stream<Entry<K,V>> entryStream() { return entries.stream(); }
+    public Iterator<Entry<K,V>> iterator() { return entries.iterator(); }
+    public void forEach(BiConsumer<? super K,? super V> cf) {
+        if (cf != null) entries.map_inorder(e -> cf.accept(e.key,e.value));
+    }
+
+    // entries with lo <= key < hi; a null bound means unbounded
+    public Stream<Entry<K,V>> entryStream(K lo, K hi) {
+        return entryStream(lo,true,hi,false);
+    }
+    public Stream<Entry<K,V>> entryStream(K lo, boolean lo_inclusive,
+                                          K hi, boolean hi_inclusive) {
+        if (lo==null && hi==null) return entries.stream();
+        if (lo==null) return entries.headSet(key_only(hi),hi_inclusive).stream();
+        if (hi==null) return entries.tailSet(key_only(lo),lo_inclusive).stream();
+        return entries.subSet(key_only(lo),lo_inclusive,key_only(hi),hi_inclusive).stream();
+    }
+
+    // number of keys in lo..hi, both inclusive, in O(log n)
+    public int countRange(K lo, K hi) {
+        if (lo==null || hi==null) return 0;
+        return entries.countRange(key_only(lo),key_only(hi));
+    }
+
+    public Optional<Entry<K,V>> firstEntry() { return entries.min(); }
+    public Optional<Entry<K,V>> lastEntry() { return entries.max(); }
+    public Optional<Entry<K,V>> floorEntry(K key) { return navigate(key,entries::floor); }
+    public Optional<Entry<K,V>> lowerEntry(K key) { return navigate(key,entries::lower); }
+    public Optional<Entry<K,V>> ceilingEntry(K key) { return navigate(key,entries::ceiling); }
+    public Optional<Entry<K,V>> higherEntry(K key) { return navigate(key,entries::higher); }
+    Optional<Entry<K,V>> navigate(K key, Function<Entry<K,V>,Optional<Entry<K,V>>> fn) {
+        return (key==null) ? Optional.empty() : fn.apply(key_only(key));
+    }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder("{");
+        forEach((k,v) -> sb.append(sb.length()>1 ? ", " : "").append(k).append('=').append(v));
+        return sb.append("}").toString();
+    }
+
+  //////////////////////////////// nested classes //////////////////
+
+  /* Ordered by key, with the map's key comparator (AVLSet needs its items
+     Comparable).  It fits in the padding of the object, so it costs
+     nothing.  equals and hashCode are those of any Map.Entry, as in
+     AbstractMap.SimpleEntry: they look at the value too.
+  */
+  public static final class Entry<K extends Comparable<? super K>,V>
+  implements Map.Entry<K,V>, Comparable<Entry<K,V>>
+  {
+    final K key;
+    V value;
+    final Comparator<K> kcmp;
+    Entry(K key, V value, Comparator<K> kcmp) {
+        this.key = key;  this.value = value;  this.kcmp = kcmp;
+    }
+
+    public K getKey() { return key; }
+    public V getValue() { return value; }
+    public V setValue(V value) {
+        if (value==null) throw new NullPointerException("AVLMap values can't be null");
+        V old = this.value;
+        this.value = value;
+        return old;
+    }
+    public int compareTo(Entry<K,V> other) { return kcmp.compare(key,other.key); }
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Map.Entry<?,?> e
+            && Objects.equals(key,e.getKey()) && Objects.equals(value,e.getValue());
+    }
+    @Override
+    public int hashCode() { return Objects.hashCode(key) ^ Objects.hashCode(value); }
+    @Override
+    public String toString() { return key+"="+value; }
+  }//Entry
+
+}//AVLMap
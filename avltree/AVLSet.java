@@ -23,15 +23,29 @@ The professor will devise torture tests for your program.
 */
 
 package avltree;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Iterator;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Stack;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.NoSuchElementException;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.*;
 import java.util.stream.Stream;
+import java.util.stream.Collector;
+import java.util.stream.StreamSupport;
 
 public class AVLSet<T extends Comparable<? super T>> extends BstSet<T>
-implements Iterable<T>
+implements OrderedSet<T>
 {
     //  inherited:
     // /*final*/ Tree<T> Empty = new Nil(); 
@@ -47,6 +61,8 @@ implements Iterable<T>
 
        The following code assumes that Empty in the superclass isn't final:
     */
+    int modcount = 0;  // bumped by every insert/remove, for fail-fast iterators
+
     public AVLSet() {   // new constructor
       super();
       Empty = new AVLNil();  // change from new Nil()
@@ -58,13 +74,461 @@ implements Iterable<T>
       root = Empty;
     }  
 
+    ///// bulk construction in O(n), instead of n inserts
+
+    // items must be in strictly ascending order (no duplicates, no nulls)
+    public static <T extends Comparable<? super T>> AVLSet<T> fromSorted(T[] items) {
+        return fromSorted(Arrays.asList(items),null);
+    }
+    public static <T extends Comparable<? super T>>
+    AVLSet<T> fromSorted(Iterator<? extends T> items) {
+        var buffer = new ArrayList<T>();
+        items.forEachRemaining(buffer::add);
+        return fromSorted(buffer,null);
+    }
+    public static <T extends Comparable<? super T>>
+    AVLSet<T> fromSorted(List<? extends T> items, Comparator<T> cmp) {
+        var set = new AVLSet<T>(cmp);
+        T previous = null;
+        for (T x : items) {
+            if (x==null || (previous!=null && set.cmp.compare(previous,x) >= 0))
+                throw new IllegalArgumentException("input is not strictly ascending");
+            previous = x;
+        }
+        set.load(items);
+        return set;
+    }
+
+    // items in any order, duplicates and nulls allowed: sort and dedup first
+    public static <T extends Comparable<? super T>> AVLSet<T> from(Iterable<? extends T> items) {
+        return from(items,null);
+    }
+    public static <T extends Comparable<? super T>>
+    AVLSet<T> from(Iterable<? extends T> items, Comparator<T> cmp) {
+        var set = new AVLSet<T>(cmp);
+        set.load(set.sorted_unique(items));
+        return set;
+    }
+
+    // the non-null items, sorted and without duplicates
+    List<T> sorted_unique(Iterable<? extends T> items) {
+        var buffer = new ArrayList<T>();
+        for (T x : items) if (x!=null) buffer.add(x);
+        buffer.sort(cmp);
+        int unique = 0;
+        for (int i=0;i<buffer.size();i++)
+            if (unique==0 || cmp.compare(buffer.get(unique-1),buffer.get(i)) != 0)
+                buffer.set(unique++, buffer.get(i));
+        return buffer.subList(0,unique);
+    }
+
+    // stream.collect(AVLSet.toAVLSet())
+    public static <T extends Comparable<? super T>> Collector<T,?,AVLSet<T>> toAVLSet() {
+        return Collector.of(ArrayList<T>::new, ArrayList::add,
+                            (a,b) -> { a.addAll(b); return a; },
+                            AVLSet::from);
+    }
+
+    // replaces the contents with a perfectly balanced tree, built bottom-up
+    void load(List<? extends T> sorted) {
+        root = build(sorted,0,sorted.size());
+        size = sorted.size();
+        modcount++;
+    }
+    Tree<T> build(List<? extends T> sorted, int lo, int hi) {
+        if (lo >= hi) return Empty;
+        int mid = (lo+hi) >>> 1;
+        var left = build(sorted,lo,mid);
+        var right = build(sorted,mid+1,hi);
+        return make_node(sorted.get(mid),left,right);  // sets height, count
+    }//build
+
+    // a B+tree copy for read-mostly use, built in O(n); see BTreeSet
+    public BTreeSet<T> freeze() {
+        return BTreeSet.fromSorted(iterator(),size,cmp);
+    }
+
+    ///// binary snapshots
+
+    /* Format: the int SNAPSHOT_MAGIC, the item count as a long, then the
+       items in ascending order, each encoded by the codec.  Reading it
+       back builds the balanced tree bottom-up in O(n), like load, straight
+       from the channel: no intermediate list of items.
+    */
+    static final int SNAPSHOT_MAGIC = 0x41564c53;  // "AVLS"
+
+    public void writeTo(WritableByteChannel channel, Codec<? super T> codec)
+    throws IOException {
+        var out = new ChannelIO.Writer(channel);
+        out.write_int(SNAPSHOT_MAGIC);
+        out.write_long(size);
+        for (T x : this) out.write(codec,x);
+        out.flush();
+    }
+
+    public static <T extends Comparable<? super T>>
+    AVLSet<T> readFrom(ReadableByteChannel channel, Codec<T> codec) throws IOException {
+        return readFrom(channel,codec,null);
+    }
+    public static <T extends Comparable<? super T>>
+    AVLSet<T> readFrom(ReadableByteChannel channel, Codec<T> codec, Comparator<T> cmp)
+    throws IOException {
+        var in = new ChannelIO.Reader(channel);
+        if (in.read_int() != SNAPSHOT_MAGIC) throw new IOException("not an AVLSet snapshot");
+        long n = in.read_long();
+        if (n < 0 || n > Integer.MAX_VALUE) throw new IOException("bad item count "+n);
+        var set = new AVLSet<T>(cmp);
+        set.root = set.new Loader(in,codec).build((int)n);
+        set.size = (int)n;
+        return set;
+    }
+
+    // like build(sorted,lo,hi), but the items come in order from a channel
+    class Loader
+    {
+        final ChannelIO.Reader in;
+        final Codec<T> codec;
+        T previous = null;
+        Loader(ChannelIO.Reader in, Codec<T> codec) { this.in = in;  this.codec = codec; }
+
+        Tree<T> build(int n) throws IOException {
+            if (n==0) return Empty;
+            int half = n/2;
+            var left = build(half);
+            T x = in.read(codec);
+            if (x==null || (previous!=null && cmp.compare(previous,x) >= 0))
+                throw new IOException("snapshot items are not strictly ascending");
+            previous = x;
+            var right = build(n-1-half);
+            return make_node(x,left,right);
+        }
+    }//Loader
+
+    ///// bulk set operations, built on join and split
+
+    /* These modify this set in place (like addAll, retainAll, removeAll)
+       and return true if it changed.  The other set is only read and must
+       use the same ordering.  Each runs in O(m log(n/m + 1)) for sizes
+       m <= n, except that union has to copy the parts of other that don't
+       overlap this set.  The parallel versions fork the two recursive
+       calls on the split halves in the common ForkJoinPool.
+    */
+    public boolean union(AVLSet<T> other) { return combine(UNION,other,false); }
+    public boolean intersect(AVLSet<T> other) { return combine(INTERSECT,other,false); }
+    public boolean difference(AVLSet<T> other) { return combine(DIFFERENCE,other,false); }
+    public boolean parallelUnion(AVLSet<T> other) { return combine(UNION,other,true); }
+    public boolean parallelIntersect(AVLSet<T> other) {
+        return combine(INTERSECT,other,true);
+    }
+    public boolean parallelDifference(AVLSet<T> other) {
+        return combine(DIFFERENCE,other,true);
+    }
+
+    /* Batched updates.  The batch is sorted and deduplicated, built into
+       a balanced tree in O(m), and merged in with one union or difference
+       pass, instead of m separate root-to-leaf descents each followed by
+       its own rebalancing.  Both return the number of items added or
+       removed.
+    */
+    public int insertAll(Collection<? extends T> items) {
+        if (items==null || items.isEmpty()) return 0;
+        var batch = sorted_unique(items);
+        int prev_size = size;
+        root = combine(UNION, root, build(batch,0,batch.size()));
+        size = count(root);
+        modcount++;  // combine relinks nodes even if nothing was added
+        return size - prev_size;
+    }
+    public int removeAll(Collection<? extends T> items) {
+        if (items==null || items.isEmpty() || size==0) return 0;
+        var batch = sorted_unique(items);
+        int prev_size = size;
+        root = combine(DIFFERENCE, root, build(batch,0,batch.size()));
+        size = count(root);
+        modcount++;
+        return prev_size - size;
+    }
+
+    static final int UNION = 0, INTERSECT = 1, DIFFERENCE = 2;
+    static final int PARALLEL_THRESHOLD = 1<<13;  // smaller pairs run sequentially
+
+    boolean combine(int op, AVLSet<T> other, boolean parallel) {
+        if (other==null) return false;
+        if (other==this) {
+            if (op!=DIFFERENCE || size==0) return false;
+            root = Empty;
+            size = 0;
+            modcount++;
+            return true;
+        }
+        int prev_size = size;
+        if (parallel)
+            root = ForkJoinPool.commonPool().invoke(new CombineTask(op,root,other.root));
+        else root = combine(op,root,other.root);
+        size = count(root);
+        modcount++;
+        return size != prev_size;
+    }
+
+    // combines t1, whose nodes are reused, with t2, which is only read
+    Tree<T> combine(int op, Tree<T> t1, Tree<T> t2) {
+        if (t1.is_empty()) return (op==UNION) ? copy(t2) : Empty;
+        if (t2.is_empty()) return (op==INTERSECT) ? Empty : t1;
+        var n2 = (AVLNode)t2;
+        var p = split(t1,n2.item);
+        var l = combine(op,p.left(),n2.left);
+        var r = combine(op,p.right(),n2.right);
+        return merge(op,l,p.found(),n2.item,r);
+    }
+
+    // puts the results for the two halves back together around the pivot
+    Tree<T> merge(int op, Tree<T> l, T found, T pivot, Tree<T> r) {
+        if (op==UNION) return join(l, (found!=null) ? found : pivot, r);
+        if (op==INTERSECT && found!=null) return join(l,found,r);
+        return join2(l,r);
+    }
+
+    class CombineTask extends RecursiveTask<Tree<T>>
+    {
+        private static final long serialVersionUID = 1L;
+        final int op;
+        final Tree<T> t1, t2;
+        CombineTask(int op, Tree<T> t1, Tree<T> t2) {
+            this.op = op;  this.t1 = t1;  this.t2 = t2;
+        }
+        protected Tree<T> compute() {
+            if (t1.is_empty() || t2.is_empty()
+                || count(t1) + count(t2) < PARALLEL_THRESHOLD)
+                return combine(op,t1,t2);
+            var n2 = (AVLNode)t2;
+            var p = split(t1,n2.item);
+            var left_task = new CombineTask(op,p.left(),n2.left);
+            left_task.fork();
+            var r = new CombineTask(op,p.right(),n2.right).compute();
+            var l = left_task.join();
+            return merge(op,l,p.found(),n2.item,r);
+        }
+    }//CombineTask
+
+    /* join(l,k,r) requires every item of l < k < every item of r.  It walks
+       down the spine of the taller tree to a subtree of about the height of
+       the shorter one, hangs both under a new node for k, and rebalances on
+       the way back up: O(|height(l) - height(r)| + 1).  The nodes of l and
+       r are reused, and so is spare (if not null) for k's node.
+    */
+    Tree<T> join(Tree<T> l, T k, Tree<T> r) { return join(l,k,r,null); }
+
+    Tree<T> join(Tree<T> l, T k, Tree<T> r, AVLNode spare) {
+        int hl = l.depth(), hr = r.depth();
+        if (hl > hr+1) {
+            var ln = (AVLNode)l;
+            ln.right = join(ln.right,k,r,spare);
+            ln.adjust();
+            return ln;
+        }
+        if (hr > hl+1) {
+            var rn = (AVLNode)r;
+            rn.left = join(l,k,rn.left,spare);
+            rn.adjust();
+            return rn;
+        }
+        if (spare==null) return make_node(k,l,r);
+        spare.item = k;
+        spare.left = l;
+        spare.right = r;
+        spare.set_height();
+        return spare;
+    }//join
+
+    // join without a middle item: the largest item of l becomes the pivot
+    Tree<T> join2(Tree<T> l, Tree<T> r) {
+        if (l.is_empty()) return r;
+        if (r.is_empty()) return l;
+        var cell = new Node(null,Empty,Empty);  // receives the max of l
+        var rest = ((AVLNode)l).delete_max(cell);
+        return join(rest,cell.item,r);
+    }
+
+    // split(t,x) breaks t into the items < x and > x, in O(log n)
+    record Pieces<T>(Tree<T> left, T found, Tree<T> right) {}
+
+    Pieces<T> split(Tree<T> t, T x) {
+        if (t.is_empty()) return new Pieces<T>(Empty,null,Empty);
+        var n = (AVLNode)t;
+        int c = cmp.compare(x,n.item);
+        if (c==0) return new Pieces<T>(n.left,n.item,n.right);
+        if (c<0) {  // n itself is reused by the join
+            var p = split(n.left,x);
+            return new Pieces<T>(p.left(),p.found(),join(p.right(),n.item,n.right,n));
+        }
+        var p = split(n.right,x);
+        return new Pieces<T>(join(n.left,n.item,p.left(),n),p.found(),p.right());
+    }//split
+
+    // deep copy, with nodes owned by this set
+    Tree<T> copy(Tree<T> t) {
+        if (t.is_empty()) return Empty;
+        var n = (AVLNode)t;
+        return make_node(n.item,copy(n.left),copy(n.right));
+    }
+
+    // every node of this set is made here, so subclasses can use their own
+    // node class (see AugmentedAVLSet)
+    AVLNode make_node(T x, Tree<T> left, Tree<T> right) {
+        return new AVLNode(x,left,right);
+    }
+
+    ///// opt-in statistics, see TreeStats
+
+    TreeStats stats = null;  // while null, every hook costs one null test
+
+    // starts counting from zero; timing adds two clock reads per operation
+    public TreeStats enableStats(boolean timing) {
+        disableStats();
+        stats = new TreeStats(getClass().getSimpleName(), () -> size,
+                              () -> size, () -> root.depth(), timing);
+        return stats;
+    }
+    public void disableStats() {
+        if (stats != null) stats.unregisterMBean();
+        stats = null;
+    }
+    public Optional<TreeStats> stats() { return Optional.ofNullable(stats); }
+
     ///// wrapper class methods:  all inherited except the new ones
 
+    /* insert and remove are iterative.  The way down records the nodes
+       passed in a path stack; on the way back up each one is adjusted
+       until one's height comes out unchanged.  Above that point no
+       balance factor can have changed, so the remaining ancestors only
+       need their counts (and any augmentation) refreshed.  Rotations
+       keep a subtree's root node in place (they swap items), so no
+       parent ever needs its child pointer rewritten, except where a leaf
+       is added or a node is unlinked.  The recursive Tree.insert and
+       Tree.remove of the nodes still work, but are no longer used here.
+    */
+    Object[] path = new Object[8];  // reused by insert, remove and locate
+    static final Object[] NO_PATH = {};
+
+    Object[] path_for(int depth) {
+        if (path.length < depth+1) path = new Object[2*(depth+1)];
+        return path;
+    }
+
+    @Override
+    public boolean insert(T x) { // returns true if inserted
+        if (x==null) return false;
+        var stats = this.stats;
+        long start = (stats==null) ? 0 : stats.begin();
+        if (root.is_empty()) {
+            root = make_node(x,Empty,Empty);
+            size++;
+            modcount++;
+            if (stats != null) stats.end(TreeStats.INSERT,0,start);
+            return true;
+        }
+        var path = path_for(root.depth());
+        int top = 0;
+        var current = (AVLNode)root;
+        while (true) {
+            int c = cmp.compare(x,current.item);
+            if (c==0) {  // duplicate: nothing changed
+                Arrays.fill(path,0,top,null);
+                if (stats != null) stats.end(TreeStats.INSERT,top+1,start);
+                return false;
+            }
+            path[top++] = current;
+            var next = (c<0) ? current.left : current.right;
+            if (next.is_empty()) {
+                var leaf = make_node(x,Empty,Empty);
+                if (c<0) current.left = leaf;
+                else current.right = leaf;
+                break;
+            }
+            current = (AVLNode)next;
+        }
+        size++;
+        modcount++;
+        retrace(path,top);
+        if (stats != null) stats.end(TreeStats.INSERT,top,start);
+        return true;
+    }//insert
+
     public boolean remove(T x) { // returns true if removed
-    if (x==null) return false;
-    int prev_size = size;
-    root = root.remove(x);
-    return size < prev_size;
+        if (x==null) return false;
+        return extract(x,null) != null;
+    }
+
+    // removes the item matching x, or probe if that isn't null (see find),
+    // and returns it, or null if there is none
+    T extract(T x, ToIntFunction<? super T> probe) {
+        var stats = this.stats;
+        long start = (stats==null) ? 0 : stats.begin();
+        var path = path_for(root.depth());
+        int top = 0;
+        Tree<T> current = root;
+        AVLNode found = null;
+        while (!current.is_empty()) {
+            var n = (AVLNode)current;
+            int c = (probe==null) ? cmp.compare(x,n.item) : probe.applyAsInt(n.item);
+            if (c==0) {
+                found = n;
+                break;
+            }
+            path[top++] = n;
+            current = (c<0) ? n.left : n.right;
+        }
+        if (found==null) {
+            Arrays.fill(path,0,top,null);
+            if (stats != null) stats.end(TreeStats.REMOVE,top,start);
+            return null;
+        }
+        T removed = found.item;
+        size--;
+        modcount++;
+        if (found.left.is_empty()) unlink(path,top,found,found.right);
+        else {  // replace by the largest item on the left, as delete_max does
+            path[top++] = found;
+            var max = (AVLNode)found.left;
+            while (!max.right.is_empty()) {
+                path[top++] = max;
+                max = (AVLNode)max.right;
+            }
+            found.item = max.item;
+            unlink(path,top,max,max.left);
+        }
+        int path_length = top+1;  // found or max wasn't pushed
+        retrace(path,top);
+        if (stats != null) stats.end(TreeStats.REMOVE,path_length,start);
+        return removed;
+    }//extract
+
+    // puts child in the place of n, whose parent is path[top-1]
+    @SuppressWarnings("unchecked")
+    void unlink(Object[] path, int top, AVLNode n, Tree<T> child) {
+        if (top==0) {
+            root = child;
+            return;
+        }
+        var parent = (AVLNode)path[top-1];
+        if (parent.left==n) parent.left = child;
+        else parent.right = child;
+    }
+
+    // rebalances the nodes in path[0..top-1] from the bottom up, then clears it
+    @SuppressWarnings("unchecked")
+    void retrace(Object[] path, int top) {
+        boolean rebalancing = true;
+        while (top > 0) {
+            var n = (AVLNode)path[--top];
+            path[top] = null;
+            if (rebalancing) {
+                int old_height = n.height;
+                n.adjust();
+                rebalancing = (n.height != old_height);
+            }
+            else n.refresh();
+        }
     }
 
     public void visit_preorder(BiConsumer<Tree<T>,T> bc) {
@@ -73,31 +537,502 @@ implements Iterable<T>
     root.visit_preorder(nv);
     }
 
-    public Stream<T> stream() { return root.stream(); }
-    public Iterator<T> iterator() { return root.stream().iterator(); }
+    // in-order traversals use an explicit stack instead of nested streams
+    public Stream<T> stream() { return StreamSupport.stream(spliterator(),false); }
+    public Iterator<T> iterator() { return new AVLIterator(); }
+    @Override
+    public Spliterator<T> spliterator() { return new AVLSpliterator(); }
 
     // non-recursive binary search, slightly more efficient
     public boolean search(T x) {
         if (x==null) return false;
+    var stats = this.stats;
+    long start = (stats==null) ? 0 : stats.begin();
+    int path_length = 0;  // nodes compared
     Tree<T> current = root;
     while (!current.is_empty()) {
         var current_node = (AVLNode)current;
+        path_length++;
         int c = cmp.compare(x, current_node.item);
-        if (c==0) return true;
+        if (c==0) break;
         else if (c<0) current = current_node.left;
         else current = current_node.right;
     }
-    return false;
+    if (stats != null) stats.end(TreeStats.SEARCH,path_length,start);
+    return !current.is_empty();
     }//non-recursive search
 
+    // the same, instead of BstSet's recursive contains
+    @Override
+    public boolean contains(T x) { return search(x); }
+
+    /* Lookups by something other than a whole item, as AVLMap needs (it
+       looks entries up by key).  probe.applyAsInt(item) must return what
+       cmp.compare(x,item) would for the item x being looked for.
+    */
+
+    // like search, but returns the matching item, or null
+    T find(ToIntFunction<? super T> probe) {
+        Tree<T> current = root;
+        while (!current.is_empty()) {
+            var current_node = (AVLNode)current;
+            int c = probe.applyAsInt(current_node.item);
+            if (c==0) return current_node.item;
+            else if (c<0) current = current_node.left;
+            else current = current_node.right;
+        }
+        return null;
+    }
+
+    /* Returns the matching item if there is one, else inserts make.get()
+       and returns that, in a single descent; nothing is inserted (and null
+       is returned) if make returns null.  The way down is recorded in the
+       path stack and retraced as in insert.  make runs with the stack put
+       aside, so it may look at this set, but if it changes it the recorded
+       path is stale and a ConcurrentModificationException is thrown, as
+       java.util.TreeMap does in computeIfAbsent.
+    */
+    @SuppressWarnings("unchecked")
+    T locate(ToIntFunction<? super T> probe, Supplier<? extends T> make) {
+        var path = path_for(root.depth());
+        int top = 0;
+        Tree<T> current = root;
+        int c = 0;
+        while (!current.is_empty()) {
+            var n = (AVLNode)current;
+            c = probe.applyAsInt(n.item);
+            if (c==0) {
+                Arrays.fill(path,0,top,null);
+                return n.item;
+            }
+            path[top++] = n;
+            current = (c<0) ? n.left : n.right;
+        }
+        int expected_mod = modcount;
+        T x = null;
+        this.path = NO_PATH;  // a reentrant insert or remove gets its own
+        try { x = make.get(); }
+        finally {
+            this.path = path;
+            if (x==null || modcount != expected_mod) Arrays.fill(path,0,top,null);
+        }
+        if (modcount != expected_mod) throw new ConcurrentModificationException();
+        if (x==null) return null;
+        var leaf = make_node(x,Empty,Empty);
+        if (top==0) root = leaf;
+        else if (c<0) ((AVLNode)path[top-1]).left = leaf;
+        else ((AVLNode)path[top-1]).right = leaf;
+        size++;
+        modcount++;
+        retrace(path,top);
+        return x;
+    }//locate
+
+    ///// order statistics, O(log n) using the subtree counts
+
+    int count(Tree<T> t) { return t.is_empty() ? 0 : ((AVLNode)t).count; }
+
+    // k-th smallest item, counting from 0
+    public Optional<T> select(int k) {
+        if (k<0 || k>=size) return Optional.empty();
+        Tree<T> current = root;
+        while (!current.is_empty()) {
+            var current_node = (AVLNode)current;
+            int lcount = count(current_node.left);
+            if (k==lcount) return Optional.of(current_node.item);
+            else if (k<lcount) current = current_node.left;
+            else {
+                k -= lcount + 1;
+                current = current_node.right;
+            }
+        }
+        return Optional.empty();
+    }//select
+
+    // number of items < x, which is also the position of x if present
+    public int rank(T x) {
+        if (x==null) return 0;
+        return count_below(x,false);
+    }
+
+    // number of items x with lo <= x <= hi
+    public int countRange(T lo, T hi) {
+        if (lo==null || hi==null || cmp.compare(lo,hi) > 0) return 0;
+        return count_below(hi,true) - count_below(lo,false);
+    }
+
+    // number of items < x, or <= x if inclusive
+    int count_below(T x, boolean inclusive) {
+        int answer = 0;
+        Tree<T> current = root;
+        while (!current.is_empty()) {
+            var current_node = (AVLNode)current;
+            int c = cmp.compare(x, current_node.item);
+            if (c<0 || (c==0 && !inclusive)) current = current_node.left;
+            else {
+                answer += count(current_node.left) + 1;
+                if (c==0) return answer;
+                current = current_node.right;
+            }
+        }
+        return answer;
+    }//count_below
+
+    ///// navigation, non-recursive and without touching more than one path
+
+    // largest item <= x (floor) or < x (lower)
+    public Optional<T> floor(T x) { return below(x,true); }
+    public Optional<T> lower(T x) { return below(x,false); }
+    // smallest item >= x (ceiling) or > x (higher)
+    public Optional<T> ceiling(T x) { return above(x,true); }
+    public Optional<T> higher(T x) { return above(x,false); }
+
+    Optional<T> below(T x, boolean inclusive) {
+        if (x==null) return Optional.empty();
+        T answer = null;
+        Tree<T> current = root;
+        while (!current.is_empty()) {
+            var current_node = (AVLNode)current;
+            int c = cmp.compare(x, current_node.item);
+            if (c==0 && inclusive) return Optional.of(current_node.item);
+            else if (c<=0) current = current_node.left;
+            else {
+                answer = current_node.item;
+                current = current_node.right;
+            }
+        }
+        return Optional.ofNullable(answer);
+    }//below
+
+    Optional<T> above(T x, boolean inclusive) {
+        if (x==null) return Optional.empty();
+        T answer = null;
+        Tree<T> current = root;
+        while (!current.is_empty()) {
+            var current_node = (AVLNode)current;
+            int c = cmp.compare(x, current_node.item);
+            if (c==0 && inclusive) return Optional.of(current_node.item);
+            else if (c>=0) current = current_node.right;
+            else {
+                answer = current_node.item;
+                current = current_node.left;
+            }
+        }
+        return Optional.ofNullable(answer);
+    }//above
+
+    ///// range views: live windows onto this set, see SubSet below
+
+    public SubSet subSet(T lo, boolean lo_inclusive, T hi, boolean hi_inclusive) {
+        if (lo==null || hi==null) throw new NullPointerException();
+        return new SubSet(lo,lo_inclusive,hi,hi_inclusive);
+    }
+    public SubSet subSet(T lo, T hi) { return subSet(lo,true,hi,false); }
+    public SubSet headSet(T hi, boolean inclusive) {
+        if (hi==null) throw new NullPointerException();
+        return new SubSet(null,false,hi,inclusive);
+    }
+    public SubSet headSet(T hi) { return headSet(hi,false); }
+    public SubSet tailSet(T lo, boolean inclusive) {
+        if (lo==null) throw new NullPointerException();
+        return new SubSet(lo,inclusive,null,false);
+    }
+    public SubSet tailSet(T lo) { return tailSet(lo,true); }
+
   //////////////////////////// new inner classes //////////////////////
 
+  /* In-order iterator.  The stack holds the nodes whose item (followed by
+     their right subtree) hasn't been visited yet, the next one on top.  It
+     never holds more than one node per level, so height slots suffice,
+     which is at most about 1.44*log2(n).  Nothing is allocated per element.
+  */
+  @SuppressWarnings("unchecked")
+  class AVLIterator implements Iterator<T>
+  {
+    Object[] stack;
+    int top = 0;
+    int expected_mod = modcount;
+    T last = null;  // returned by next, null if it can't be removed
+    T hi = null;    // upper bound for range views, null if none
+    boolean hi_inclusive;
+
+    AVLIterator() {
+        stack = new Object[root.depth()];
+        push_left(root);
+    }
+
+    // iterates over lo..hi only; a null bound means unbounded on that side
+    AVLIterator(T lo, boolean lo_inclusive, T hi, boolean hi_inclusive) {
+        stack = new Object[root.depth()];
+        this.hi = hi;
+        this.hi_inclusive = hi_inclusive;
+        if (lo==null) push_left(root);
+        else seek(lo,lo_inclusive);
+    }
+
+    void push_left(Tree<T> t) {
+        while (!t.is_empty()) {
+            var n = (AVLNode)t;
+            stack[top++] = n;
+            t = n.left;
+        }
+    }
+
+    // rebuild the stack so that it starts at the smallest item > x,
+    // or >= x if inclusive
+    void seek(T x, boolean inclusive) {
+        top = 0;
+        Tree<T> current = root;
+        while (!current.is_empty()) {
+            var n = (AVLNode)current;
+            int c = cmp.compare(x,n.item);
+            if (c<0 || (c==0 && inclusive)) {
+                stack[top++] = n;
+                current = n.left;
+            }
+            else current = n.right;
+        }
+    }
+
+    public boolean hasNext() {
+        if (top==0) return false;
+        if (hi==null) return true;
+        int c = cmp.compare(((AVLNode)stack[top-1]).item, hi);
+        return c<0 || (c==0 && hi_inclusive);
+    }
+
+    public T next() {
+        if (modcount != expected_mod) throw new ConcurrentModificationException();
+        if (!hasNext()) throw new NoSuchElementException();
+        var n = (AVLNode)stack[--top];
+        stack[top] = null;
+        push_left(n.right);
+        last = n.item;
+        return last;
+    }
+
+    // rotations move items between nodes, so re-descend after removing
+    public void remove() {
+        if (last==null) throw new IllegalStateException();
+        if (modcount != expected_mod) throw new ConcurrentModificationException();
+        AVLSet.this.remove(last);
+        expected_mod = modcount;
+        seek(last,false);
+        last = null;
+    }
+  }//AVLIterator
+
+  /* A range view, as returned by subSet, headSet and tailSet.  It holds
+     only its bounds (null meaning unbounded), so it always reflects the
+     current contents of the set.  Iteration seeks to the lower bound and
+     stops at the upper one, visiting O(log n + k) nodes for k items in
+     range; size() is O(log n) from the subtree counts.
+  */
+  public class SubSet implements Iterable<T>
+  {
+    final T lo, hi;
+    final boolean lo_inclusive, hi_inclusive;
+
+    SubSet(T lo, boolean lo_inclusive, T hi, boolean hi_inclusive) {
+        this.lo = lo;  this.lo_inclusive = lo_inclusive;
+        this.hi = hi;  this.hi_inclusive = hi_inclusive;
+    }
+
+    boolean above_lo(T x) {
+        if (lo==null) return true;
+        int c = cmp.compare(x,lo);
+        return c>0 || (c==0 && lo_inclusive);
+    }
+    boolean below_hi(T x) {
+        if (hi==null) return true;
+        int c = cmp.compare(x,hi);
+        return c<0 || (c==0 && hi_inclusive);
+    }
+    boolean in_range(T x) { return above_lo(x) && below_hi(x); }
+
+    public int size() {
+        int upto = (hi==null) ? AVLSet.this.size : count_below(hi,hi_inclusive);
+        int before = (lo==null) ? 0 : count_below(lo,!lo_inclusive);
+        return Math.max(0, upto - before);
+    }
+    public boolean is_empty() { return min().isEmpty(); }
+    public boolean contains(T x) {
+        return x!=null && in_range(x) && search(x);
+    }
+    public Optional<T> min() {
+        Optional<T> first = (lo==null) ? AVLSet.this.min() : above(lo,lo_inclusive);
+        return first.filter(this::below_hi);
+    }
+    public Optional<T> max() {
+        Optional<T> last = (hi==null) ? AVLSet.this.max() : below(hi,hi_inclusive);
+        return last.filter(this::above_lo);
+    }
+
+    public Iterator<T> iterator() {
+        return new AVLIterator(lo,lo_inclusive,hi,hi_inclusive);
+    }
+    public Spliterator<T> spliterator() {
+        return new AVLSpliterator(lo,lo_inclusive,hi,hi_inclusive,size());
+    }
+    public Stream<T> stream() { return StreamSupport.stream(spliterator(),false); }
+  }//SubSet
+
+  /* Splittable spliterator for (parallel) streams.  The stack works like
+     AVLIterator's, except that an entry can be "lone": it stands for the
+     node's item only, its right subtree sitting just below it.  trySplit
+     hands every entry above the bottom one (all smaller items) to a new
+     spliterator and keeps the bottom one, which amounts to giving away a
+     left subtree and keeping the right.  Once the bottom entry is all
+     that's left it is opened up into its item and its right subtree.
+     Subtree counts make every size exact, before and after splitting.
+
+     For a SubSet the stack starts as AVLIterator's seek leaves it, and
+     nodes above the upper bound are never pushed (their left subtrees
+     are, as usual).  Such nodes can only lie below the bottom entry, so
+     every entry but the bottom one stands for items all in range, and
+     the bottom one's weight is never needed: its share is what's left.
+  */
+  @SuppressWarnings("unchecked")
+  class AVLSpliterator implements Spliterator<T>
+  {
+    Object[] stack;
+    boolean[] lone;
+    int top = 0;
+    long est;  // exactly the number of items left
+    int expected_mod;
+    T hi = null;  // upper bound for range views, null if none
+    boolean hi_inclusive;
+
+    AVLSpliterator() {
+        int capacity = root.depth() + 1;  // one extra slot for a lone entry
+        stack = new Object[capacity];
+        lone = new boolean[capacity];
+        push_left(root);
+        est = size;
+        expected_mod = modcount;
+    }
+
+    // over lo..hi only, of which there are size; null bounds as in AVLIterator
+    AVLSpliterator(T lo, boolean lo_inclusive, T hi, boolean hi_inclusive, long size) {
+        int capacity = root.depth() + 1;
+        stack = new Object[capacity];
+        lone = new boolean[capacity];
+        this.hi = hi;
+        this.hi_inclusive = hi_inclusive;
+        if (lo==null) push_left(root);
+        else {
+            Tree<T> current = root;
+            while (!current.is_empty()) {
+                var n = (AVLNode)current;
+                int c = cmp.compare(lo,n.item);
+                if (c<0 || (c==0 && lo_inclusive)) {
+                    if (!beyond_hi(n.item)) {
+                        lone[top] = false;
+                        stack[top++] = n;
+                    }
+                    current = n.left;
+                }
+                else current = n.right;
+            }
+        }
+        est = size;
+        expected_mod = modcount;
+    }
+
+    AVLSpliterator(Object[] stack, boolean[] lone, int top, long est, int mod,
+                   T hi, boolean hi_inclusive) {
+        this.stack = stack;
+        this.lone = lone;
+        this.top = top;
+        this.est = est;
+        this.expected_mod = mod;
+        this.hi = hi;
+        this.hi_inclusive = hi_inclusive;
+    }
+
+    boolean beyond_hi(T x) {
+        if (hi==null) return false;
+        int c = cmp.compare(x,hi);
+        return c>0 || (c==0 && !hi_inclusive);
+    }
+
+    void push_left(Tree<T> t) {
+        while (!t.is_empty()) {
+            var n = (AVLNode)t;
+            if (!beyond_hi(n.item)) {
+                lone[top] = false;
+                stack[top++] = n;
+            }
+            t = n.left;
+        }
+    }
+
+    // number of items an entry stands for
+    long weight(int i) {
+        if (lone[i]) return 1;
+        return 1 + count(((AVLNode)stack[i]).right);
+    }
+
+    public Spliterator<T> trySplit() {
+        if (top==1 && !lone[0]) {  // open up the last entry
+            var n = (AVLNode)stack[0];
+            if (n.right.is_empty()) return null;
+            top = 0;
+            push_left(n.right);
+            lone[top] = true;
+            stack[top++] = n;
+        }
+        if (top < 2) return null;
+        long split_est = 0;
+        for (int i=1;i<top;i++) split_est += weight(i);
+        int capacity = stack.length;
+        var prefix_stack = new Object[capacity];
+        var prefix_lone = new boolean[capacity];
+        System.arraycopy(stack,1,prefix_stack,0,top-1);
+        System.arraycopy(lone,1,prefix_lone,0,top-1);
+        var prefix = new AVLSpliterator(prefix_stack,prefix_lone,top-1,
+                                        split_est,expected_mod,hi,hi_inclusive);
+        for (int i=1;i<top;i++) stack[i] = null;
+        top = 1;
+        est -= split_est;
+        return prefix;
+    }
+
+    // pops the next node and returns its item
+    T advance() {
+        var n = (AVLNode)stack[--top];
+        stack[top] = null;
+        if (!lone[top]) push_left(n.right);
+        est--;
+        return n.item;
+    }
+
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (modcount != expected_mod) throw new ConcurrentModificationException();
+        if (top==0) return false;
+        action.accept(advance());
+        return true;
+    }
+
+    public void forEachRemaining(Consumer<? super T> action) {
+        while (top > 0) action.accept(advance());
+        if (modcount != expected_mod) throw new ConcurrentModificationException();
+    }
+
+    public long estimateSize() { return est; }
+    public int characteristics() {
+        return SORTED | DISTINCT | ORDERED | NONNULL | SIZED | SUBSIZED;
+    }
+    public Comparator<? super T> getComparator() { return cmp; }
+  }//AVLSpliterator
+
   class AVLNil extends Nil
   {
     @Override    
     public Tree<T> insert(T x) {
       size++;
-      return new AVLNode(x,Empty,Empty);  // change from new Node(..)
+      modcount++;
+      return make_node(x,Empty,Empty);  // change from new Node(..)
     }//insert
     @Override
     public String toString() { return ""; }
@@ -107,17 +1042,30 @@ implements Iterable<T>
   {
     // item, left, right inherited
     int height; // height of this subtree
+    int count;  // number of nodes in this subtree
 
     @Override
     public int depth() { return height; }  // now O(1)
     
-    int set_height() {  // sets height in O(1) time
+    int set_height() {  // sets height (and count) in O(1) time
     int ldepth = left.depth();
         int rdepth = right.depth();
         height = 1 + Math.max(ldepth,rdepth);
+        count = 1 + count(left) + count(right);
+        augment();
         return rdepth - ldepth;
     }// returns height balance factor
 
+    // recomputes any other subtree summary from the children's; called by
+    // set_height, so after every insert, remove, rotation and join
+    void augment() {}
+
+    // for a node whose height is known not to have changed
+    void refresh() {
+        count = 1 + count(left) + count(right);
+        augment();
+    }
+
     public AVLNode(T i, Tree<T> lf, Tree<T> rt) { 
        super(i,lf,rt); 
        set_height();
@@ -148,11 +1096,12 @@ implements Iterable<T>
 
       // removal
     public Tree<T> remove(T x) {
-    int c = x.compareTo(item);
+    int c = cmp.compare(x,item);
     if (c<0) left = left.remove(x);
     else if (c>0) right = right.remove(x);
     else { // found it
         size--;
+        modcount++;
         if (left.is_empty()) return right;
         else {  // delete largest value on left subtree
         left = ((AVLNode)left).delete_max(this);
@@ -193,15 +1142,19 @@ implements Iterable<T>
     if (bf < -1) {
         if (((AVLNode)left).left.depth() >= ((AVLNode)left).right.depth()) {
             LL();
+            if (stats != null) stats.rotated(TreeStats.LL);
         } else {
             LR();
+            if (stats != null) stats.rotated(TreeStats.LR);
             }
     }
     if (bf > 1) {
         if (((AVLNode)right).right.depth() >= ((AVLNode)right).left.depth()) {
             RR();
+            if (stats != null) stats.rotated(TreeStats.RR);
         } else {
             RL();
+            if (stats != null) stats.rotated(TreeStats.RL);
         }
     }
     } // for now
@@ -212,8 +1165,13 @@ implements Iterable<T>
     // HOWEVER, be sure to type-cast to AVLNode instead of Node, as in
     // AVLNode lnode = (AVLNode)left; ...
 
+    // rotations keep `this` as the root of the subtree (the parent still
+    // points to it), so the items of this and the child are swapped.
     void LL() {
         var lnode = (AVLNode)this.left;
+        T tmp = this.item;
+        this.item = lnode.item;
+        lnode.item = tmp;
         this.left = lnode.left;
         lnode.left = lnode.right;
         lnode.right = this.right;
@@ -223,28 +1181,25 @@ implements Iterable<T>
     }
     void RR() {
         var rnode = (AVLNode)this.right;
+        T tmp = this.item;
+        this.item = rnode.item;
+        rnode.item = tmp;
         this.right = rnode.right;
         rnode.right = rnode.left;
         rnode.left = this.left;
         this.left = rnode;
         rnode.set_height();
         this.set_height();
-        
     }
 
     void LR() {
-        if (this.left != null) {
-            ((AVLNode)this.left).LL();
-        }
-
-        RR();
+        ((AVLNode)this.left).RR();
+        LL();
     }
 
     void RL() {
-        if (this.right != null) {
-            ((AVLNode)this.right).RR();
-        }
-        LL();
+        ((AVLNode)this.right).LL();
+        RR();
     }
   }//AVLNode inner class
 
@@ -0,0 +1,92 @@
+/* AVLSet whose nodes also keep a summary of their subtree.
+
+   Each node holds monoid.combine(summary of left, lift(item), summary of
+   right), recomputed in set_height like the height and count, so it stays
+   right through every insert, remove, rotation and join.  Then the
+   summary of any range of items, such as the total volume between two
+   timestamps, can be put together from O(log n) node summaries:
+   rangeAggregate(lo,hi) takes the summaries of whole subtrees that lie
+   inside lo..hi along the two search paths for lo and hi.
+
+   For example, with items that carry a volume,
+       new AugmentedAVLSet<Trade,Long>(Monoid.of(0L, Long::sum, Trade::volume))
+   answers range sums.
+*/
+
+package avltree;
+import java.util.Comparator;
+
+public class AugmentedAVLSet<T extends Comparable<? super T>, A> extends AVLSet<T>
+{
+    final Monoid<? super T,A> monoid;
+
+    public AugmentedAVLSet(Monoid<? super T,A> monoid) {
+        super();
+        this.monoid = monoid;
+    }
+    public AugmentedAVLSet(Monoid<? super T,A> monoid, Comparator<T> cmp) {
+        super(cmp);
+        this.monoid = monoid;
+    }
+
+    @Override
+    AVLNode make_node(T x, Tree<T> left, Tree<T> right) {
+        return new AugNode(x,left,right);
+    }
+
+    @SuppressWarnings("unchecked")
+    A summary(Tree<T> t) {
+        return t.is_empty() ? monoid.identity() : ((AugNode)t).summary;
+    }
+
+    // summary of all items, in O(1)
+    public A aggregate() { return summary(root); }
+
+    // summary of the items in lo..hi, both inclusive, in O(log n)
+    public A rangeAggregate(T lo, T hi) {
+        if (lo==null || hi==null || cmp.compare(lo,hi) > 0) return monoid.identity();
+        Tree<T> current = root;
+        // find the top node inside the range, where the paths to lo and hi part
+        while (!current.is_empty()) {
+            var n = (AVLNode)current;
+            if (cmp.compare(n.item,lo) < 0) current = n.right;
+            else if (cmp.compare(n.item,hi) > 0) current = n.left;
+            else return monoid.combine(monoid.combine(from(n.left,lo), monoid.lift(n.item)),
+                                       upto(n.right,hi));
+        }
+        return monoid.identity();
+    }
+
+    // summary of the items >= lo in t
+    A from(Tree<T> t, T lo) {
+        if (t.is_empty()) return monoid.identity();
+        var n = (AVLNode)t;
+        if (cmp.compare(n.item,lo) < 0) return from(n.right,lo);
+        return monoid.combine(monoid.combine(from(n.left,lo), monoid.lift(n.item)),
+                              summary(n.right));
+    }
+    // summary of the items <= hi in t
+    A upto(Tree<T> t, T hi) {
+        if (t.is_empty()) return monoid.identity();
+        var n = (AVLNode)t;
+        if (cmp.compare(n.item,hi) > 0) return upto(n.left,hi);
+        return monoid.combine(monoid.combine(summary(n.left), monoid.lift(n.item)),
+                              upto(n.right,hi));
+    }
+
+  //////////////////////////////// inner classes //////////////////
+
+  class AugNode extends AVLNode
+  {
+    A summary;  // of this subtree; no initializer, set by set_height
+
+    AugNode(T i, Tree<T> lf, Tree<T> rt) { super(i,lf,rt); }
+
+    @Override
+    void augment() {
+        summary = monoid.combine(monoid.combine(summary(left), monoid.lift(item)),
+                                 summary(right));
+    }
+  }//AugNode
+
+}//AugmentedAVLSet
@@ -0,0 +1,380 @@
+/* B+tree set: a wide-node alternative to AVLSet for read-mostly data.
+
+   A lookup in an AVLSet visits about 1.44*log2(n) nodes, each a separate
+   object, so each level costs a dependent cache miss: around 25-35 of
+   them for tens of millions of keys.  Here each node holds up to ORDER
+   (64) sorted keys and is searched by binary search within its array, so
+   the tree is only log64(n) levels deep: 4-5 levels for 50M keys.
+
+   All items are in the leaves, which are chained left to right for
+   iteration.  An inner node with n keys has n+1 children, and its key i
+   separates them:  keys in children[i] < keys[i] <= keys in children[i+1].
+   Every node except the root holds at least MIN_KEYS keys.  A node that
+   overflows on insert is split in two and the split key moves up;
+   a node that underflows on remove borrows a key from a sibling, or
+   is merged with it when the sibling has none to spare.
+
+   AVLSet.freeze() builds one from an existing AVLSet in O(n), with
+   every node evenly filled.
+*/
+
+package avltree;
+import java.util.Iterator;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.NoSuchElementException;
+import java.util.ConcurrentModificationException;
+import java.util.function.*;
+import java.util.stream.Stream;
+
+public class BTreeSet<T extends Comparable<? super T>>
+implements OrderedSet<T>
+{
+    static final int ORDER = 64;           // most keys a node can hold
+    static final int MIN_KEYS = ORDER/2;   // fewest, except in the root
+
+    Node root = new Leaf();
+    int size = 0;
+    int height = 1;  // number of levels
+    int modcount = 0;
+    Comparator<T> cmp = (x,y) -> x.compareTo(y);
+
+    T promoted;  // key moved up by the last split, see insert
+
+    public BTreeSet() {}
+    public BTreeSet(Comparator<T> cmp) {
+        if (cmp!=null) this.cmp = cmp;
+    }
+
+    @SuppressWarnings("unchecked")
+    T key(Node nd, int i) { return (T)nd.keys[i]; }
+
+    // like Arrays.binarySearch: index of x if found, else -(insertion point)-1
+    int find(Node nd, T x) {
+        int lo = 0, hi = nd.n - 1;
+        while (lo <= hi) {
+            int mid = (lo+hi) >>> 1;
+            int c = cmp.compare(key(nd,mid), x);
+            if (c<0) lo = mid+1;
+            else if (c>0) hi = mid-1;
+            else return mid;
+        }
+        return -(lo+1);
+    }
+    // the child of an inner node whose keys may include x
+    int child_index(Node nd, T x) {
+        int i = find(nd,x);
+        return (i>=0) ? i+1 : -(i+1);
+    }
+
+    ///// set operations
+
+    public int size() { return size; }
+    public int depth() { return height; }
+    public boolean is_empty() { return size==0; }
+
+    public boolean contains(T x) {
+        if (x==null) return false;
+        Node current = root;
+        for (int level = height; level > 1; level--)
+            current = ((Inner)current).children[child_index(current,x)];
+        return find(current,x) >= 0;
+    }
+
+    public boolean insert(T x) {
+        if (x==null) return false;
+        int prev_size = size;
+        Node sibling = insert(root,x);
+        if (sibling != null) {  // the root was split: grow a level
+            var new_root = new Inner();
+            new_root.keys[0] = promoted;
+            new_root.children[0] = root;
+            new_root.children[1] = sibling;
+            new_root.n = 1;
+            root = new_root;
+            height++;
+        }
+        promoted = null;
+        return size != prev_size;
+    }
+
+    // returns the new right sibling of nd if nd had to be split, with the
+    // key that separates them in promoted, else null
+    Node insert(Node nd, T x) {
+        if (nd instanceof Leaf leaf) {
+            int i = find(leaf,x);
+            if (i>=0) return null;  // already there
+            insert_at(leaf, -(i+1), x);
+            size++;
+            modcount++;
+            return (leaf.n > ORDER) ? split(leaf) : null;
+        }
+        var inner = (Inner)nd;
+        int i = child_index(inner,x);
+        Node sibling = insert(inner.children[i],x);
+        if (sibling==null) return null;
+        insert_at(inner, i, promoted);
+        System.arraycopy(inner.children, i+1, inner.children, i+2, inner.n-i-1);
+        inner.children[i+1] = sibling;
+        return (inner.n > ORDER) ? split(inner) : null;
+    }//insert
+
+    static void insert_at(Node nd, int i, Object x) {
+        System.arraycopy(nd.keys, i, nd.keys, i+1, nd.n-i);
+        nd.keys[i] = x;
+        nd.n++;
+    }
+
+    // an overfull leaf keeps the lower half; its first key of the upper
+    // half is copied up as the separator
+    Leaf split(Leaf leaf) {
+        var right = new Leaf();
+        int half = leaf.n/2;
+        right.n = leaf.n - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.n);
+        clear(leaf, half);
+        right.next = leaf.next;
+        leaf.next = right;
+        promoted = key(right,0);
+        return right;
+    }
+    // an overfull inner node: the middle key moves up, out of both halves
+    Inner split(Inner inner) {
+        var right = new Inner();
+        int half = inner.n/2;
+        right.n = inner.n - half - 1;
+        System.arraycopy(inner.keys, half+1, right.keys, 0, right.n);
+        System.arraycopy(inner.children, half+1, right.children, 0, right.n+1);
+        promoted = key(inner,half);
+        for (int i=half+1;i<=inner.n;i++) inner.children[i] = null;
+        clear(inner, half);
+        return right;
+    }
+    // drops the keys from position n on, so they can be collected
+    static void clear(Node nd, int n) {
+        for (int i=n;i<nd.n;i++) nd.keys[i] = null;
+        nd.n = n;
+    }
+
+    public boolean remove(T x) {
+        if (x==null) return false;
+        if (!remove(root,x)) return false;
+        if (root instanceof Inner inner && inner.n==0) {  // shrink a level
+            root = inner.children[0];
+            height--;
+        }
+        return true;
+    }
+
+    boolean remove(Node nd, T x) {
+        if (nd instanceof Leaf leaf) {
+            int i = find(leaf,x);
+            if (i<0) return false;
+            remove_at(leaf,i);
+            size--;
+            modcount++;
+            return true;
+        }
+        var inner = (Inner)nd;
+        int i = child_index(inner,x);
+        if (!remove(inner.children[i],x)) return false;
+        if (inner.children[i].n < MIN_KEYS) rebalance(inner,i);
+        return true;
+    }//remove
+
+    static void remove_at(Node nd, int i) {
+        System.arraycopy(nd.keys, i+1, nd.keys, i, nd.n-i-1);
+        nd.keys[--nd.n] = null;
+    }
+
+    // children[i] of p is one key short: borrow one from a sibling, or merge
+    void rebalance(Inner p, int i) {
+        if (i>0 && p.children[i-1].n > MIN_KEYS) borrow_from_left(p,i);
+        else if (i<p.n && p.children[i+1].n > MIN_KEYS) borrow_from_right(p,i);
+        else if (i>0) merge(p,i-1);
+        else merge(p,i);
+    }
+
+    void borrow_from_left(Inner p, int i) {
+        Node c = p.children[i], left = p.children[i-1];
+        if (c instanceof Inner ci) {
+            var li = (Inner)left;
+            System.arraycopy(ci.children, 0, ci.children, 1, ci.n+1);
+            ci.children[0] = li.children[li.n];
+            li.children[li.n] = null;
+            insert_at(ci, 0, p.keys[i-1]);
+            p.keys[i-1] = li.keys[li.n-1];
+        }
+        else {
+            insert_at(c, 0, left.keys[left.n-1]);
+            p.keys[i-1] = c.keys[0];
+        }
+        left.keys[--left.n] = null;
+    }
+
+    void borrow_from_right(Inner p, int i) {
+        Node c = p.children[i], right = p.children[i+1];
+        if (c instanceof Inner ci) {
+            var ri = (Inner)right;
+            ci.keys[ci.n] = p.keys[i];
+            ci.children[ci.n+1] = ri.children[0];
+            ci.n++;
+            p.keys[i] = ri.keys[0];
+            System.arraycopy(ri.children, 1, ri.children, 0, ri.n);
+            ri.children[ri.n] = null;
+            remove_at(ri,0);
+        }
+        else {
+            c.keys[c.n++] = right.keys[0];
+            remove_at(right,0);
+            p.keys[i] = right.keys[0];
+        }
+    }
+
+    // moves everything in children[j+1] into children[j] and drops it
+    void merge(Inner p, int j) {
+        Node left = p.children[j], right = p.children[j+1];
+        if (left instanceof Inner li) {
+            var ri = (Inner)right;
+            li.keys[li.n] = p.keys[j];
+            System.arraycopy(ri.keys, 0, li.keys, li.n+1, ri.n);
+            System.arraycopy(ri.children, 0, li.children, li.n+1, ri.n+1);
+            li.n += ri.n + 1;
+        }
+        else {
+            System.arraycopy(right.keys, 0, left.keys, left.n, right.n);
+            left.n += right.n;
+            ((Leaf)left).next = ((Leaf)right).next;
+        }
+        remove_at(p,j);
+        System.arraycopy(p.children, j+2, p.children, j+1, p.n-j);
+        p.children[p.n+1] = null;
+    }
+
+    public Optional<T> min() {
+        if (size==0) return Optional.empty();
+        return Optional.of(key(first_leaf(),0));
+    }
+    public Optional<T> max() {
+        if (size==0) return Optional.empty();
+        Node current = root;
+        while (current instanceof Inner inner) current = inner.children[inner.n];
+        return Optional.of(key(current,current.n-1));
+    }
+
+    Leaf first_leaf() {
+        Node current = root;
+        while (current instanceof Inner inner) current = inner.children[0];
+        return (Leaf)current;
+    }
+
+    public void map_inorder(Consumer<? super T> cf) {
+        if (cf==null) return;
+        for (Leaf leaf = first_leaf(); leaf != null; leaf = leaf.next)
+            for (int i=0;i<leaf.n;i++) cf.accept(key(leaf,i));
+    }
+
+    public Iterator<T> iterator() { return new BTreeIterator(); }
+    public Stream<T> stream() {
+        return OrderedSet.sorted_stream(iterator(),size,cmp,0);
+    }
+
+    ///// bulk construction, used by AVLSet.freeze
+
+    /* Builds the tree bottom-up from n items in strictly ascending order:
+       the items are dealt out evenly over ceil(n/ORDER) leaves, then the
+       leaves over as few parents as possible, and so on up.  Even
+       sharing keeps every node at MIN_KEYS or more.
+    */
+    static <T extends Comparable<? super T>>
+    BTreeSet<T> fromSorted(Iterator<? extends T> items, int n, Comparator<T> cmp) {
+        var set = new BTreeSet<T>(cmp);
+        if (n==0) return set;
+        int leaves = (n + ORDER - 1) / ORDER;
+        Node[] level = new Node[leaves];
+        Object[] lows = new Object[leaves];  // smallest item under each node
+        Leaf previous = null;
+        for (int k=0;k<leaves;k++) {
+            var leaf = new Leaf();
+            leaf.n = share(n,leaves,k);
+            for (int i=0;i<leaf.n;i++) leaf.keys[i] = items.next();
+            if (previous != null) previous.next = leaf;
+            previous = leaf;
+            level[k] = leaf;
+            lows[k] = leaf.keys[0];
+        }
+        int height = 1;
+        while (level.length > 1) {
+            int count = level.length;
+            int parents = (count + ORDER) / (ORDER+1);
+            Node[] up = new Node[parents];
+            Object[] up_lows = new Object[parents];
+            int c = 0;
+            for (int k=0;k<parents;k++) {
+                var inner = new Inner();
+                int m = share(count,parents,k);  // children of this parent
+                up_lows[k] = lows[c];
+                inner.children[0] = level[c++];
+                for (int i=1;i<m;i++) {
+                    inner.keys[i-1] = lows[c];
+                    inner.children[i] = level[c++];
+                }
+                inner.n = m-1;
+                up[k] = inner;
+            }
+            level = up;
+            lows = up_lows;
+            height++;
+        }
+        set.root = level[0];
+        set.size = n;
+        set.height = height;
+        return set;
+    }//fromSorted
+
+    // size of part k when total items are shared out evenly over parts
+    static int share(int total, int parts, int k) {
+        return total/parts + ((k < total%parts) ? 1 : 0);
+    }
+
+  //////////////////////////////// nested classes //////////////////
+
+  // keys has room for one more than ORDER, so a node can overflow
+  // before it is split
+  static abstract class Node
+  {
+    final Object[] keys = new Object[ORDER+1];
+    int n = 0;  // keys in use
+  }
+
+  static final class Leaf extends Node
+  {
+    Leaf next;  // leaf to the right, null for the last one
+  }
+
+  static final class Inner extends Node
+  {
+    final Node[] children = new Node[ORDER+2];
+  }
+
+  // walks the chain of leaves, fail-fast like AVLIterator
+  class BTreeIterator implements Iterator<T>
+  {
+    Leaf leaf = first_leaf();
+    int i = 0;
+    final int expected_mod = modcount;
+
+    public boolean hasNext() { return leaf != null && i < leaf.n; }
+    public T next() {
+        if (modcount != expected_mod) throw new ConcurrentModificationException();
+        if (!hasNext()) throw new NoSuchElementException();
+        T x = key(leaf,i++);
+        if (i==leaf.n) {
+            leaf = leaf.next;
+            i = 0;
+        }
+        return x;
+    }
+  }//BTreeIterator
+
+}//BTreeSet
@@ -33,6 +33,7 @@ public class BstSet<T extends Comparable<? super T>> {
         return size > previous_size;
     } // returns true if something was inserted, false otherwise
     public Optional<T> min() { return root.min(); }
+    public Optional<T> max() { return root.max(); }
     public void map_inorder(Consumer<? super T> cf) {
 	if (cf != null) root.map_inorder(cf);
     }
@@ -69,8 +70,9 @@ public class BstSet<T extends Comparable<? super T>> {
         T x = null;
         return new Node(x , Empty, Empty); 
     }
-    public Tree<T> successor(T x, Tree<T> ancestor) { return Empty; }
-    public Tree<T> predecessor(T x, Tree<T> ancestor) { return Empty; }
+    // x isn't in the tree: the closest ancestor we branched away from is it
+    public Tree<T> successor(T x, Tree<T> ancestor) { return ancestor; }
+    public Tree<T> predecessor(T x, Tree<T> ancestor) { return ancestor; }
 
 
 
@@ -151,10 +153,10 @@ public class BstSet<T extends Comparable<? super T>> {
             }
             
             if (comparison < 0) {
-                return ((Node)left).successor(x, this);
+                return left.successor(x, this);
             }
             
-            return ((Node)right).successor(x, ancestor);
+            return right.successor(x, ancestor);
         }
 
     public Tree<T> predecessor(T x, Tree<T> ancestor) {
@@ -173,10 +175,10 @@ public class BstSet<T extends Comparable<? super T>> {
             }
 
             if (comparison > 0) {
-                return ((Node) right).predecessor(x, this);
+                return right.predecessor(x, this);
             }
 
-            return ((Node) left).predecessor(x, ancestor);
+            return left.predecessor(x, ancestor);
     }
 
     ///// for comparison, non-recursive version of insert
@@ -211,23 +213,26 @@ public class BstSet<T extends Comparable<? super T>> {
         }
     } // for now
 
-    void LL() {
+    void LL() {  // swaps items so that this stays the root of the subtree
         Node lnode = (Node)left;
-        left = lnode.right;
-        lnode.right = this;
-        this.item = lnode.item;
-        this.left = lnode.left;
-        this.right = lnode.right;
+        T tmp = item;
+        item = lnode.item;
+        lnode.item = tmp;
+        left = lnode.left;
+        lnode.left = lnode.right;
+        lnode.right = right;
+        right = lnode;
     } 
     
     void RR() {
         Node rnode = (Node)right;
-        right = rnode.left;
-        rnode.left = this;
-        this.item = rnode.item;
-        this.left = rnode.left;
-        this.right = rnode.right;
-
+        T tmp = item;
+        item = rnode.item;
+        rnode.item = tmp;
+        right = rnode.right;
+        rnode.right = rnode.left;
+        rnode.left = left;
+        left = rnode;
     }
   }//Node inner class
 
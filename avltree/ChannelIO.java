@@ -0,0 +1,129 @@
+package avltree;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/* Buffered reading and writing of Codec-encoded values over NIO channels,
+   for the binary snapshots.  Only one buffer is ever held, so a snapshot
+   of any size streams through in constant memory.
+*/
+final class ChannelIO
+{
+    static final int BUFFER_SIZE = 1<<16;
+    static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;  // largest array
+
+    private ChannelIO() {}
+
+    static final class Writer
+    {
+        final WritableByteChannel channel;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Writer(WritableByteChannel channel) { this.channel = channel; }
+
+        // makes room for n more bytes
+        void reserve(int n) throws IOException {
+            if (buffer.remaining() >= n) return;
+            flush();
+            if (buffer.capacity() < n) buffer = ByteBuffer.allocate(n);
+        }
+
+        <T> void write(Codec<T> codec, T x) throws IOException {
+            reserve(codec.size(x));
+            codec.write(x,buffer);
+        }
+        void write_char(char c) throws IOException {
+            reserve(2);
+            buffer.putChar(c);
+        }
+        void write_int(int x) throws IOException {
+            reserve(4);
+            buffer.putInt(x);
+        }
+        void write_long(long x) throws IOException {
+            reserve(8);
+            buffer.putLong(x);
+        }
+        void write_varint(long x) throws IOException {
+            reserve(10);
+            Codec.put_varint(buffer,x);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                if (channel.write(buffer) == 0)  // non-blocking, see Reader.fill
+                    throw new IOException("channel took no data; snapshots need a blocking channel");
+            buffer.clear();
+        }
+    }//Writer
+
+    static final class Reader
+    {
+        final ReadableByteChannel channel;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();  // empty
+
+        Reader(ReadableByteChannel channel) { this.channel = channel; }
+
+        // reads more bytes in, growing the buffer if it is already full.
+        // There is always room, so a read of 0 bytes means the channel is
+        // non-blocking, and waiting on it would spin: that is an error.
+        void fill() throws IOException {
+            if (buffer.position()==0 && buffer.limit()==buffer.capacity()) {
+                if (buffer.capacity() >= MAX_BUFFER_SIZE)
+                    throw new IOException("snapshot record too large");
+                var bigger = ByteBuffer.allocate(
+                    (int)Math.min(2L*buffer.capacity(), MAX_BUFFER_SIZE));
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            else buffer.compact();
+            int n = channel.read(buffer);
+            buffer.flip();
+            if (n < 0) throw new EOFException("snapshot is truncated");
+            if (n == 0) throw new IOException("no data from channel; snapshots need a blocking channel");
+        }
+
+        // retries codec.read from the same position until the whole
+        // encoding is in the buffer
+        <T> T read(Codec<T> codec) throws IOException {
+            while (true) {
+                int start = buffer.position();
+                try {
+                    return codec.read(buffer);
+                }
+                catch (BufferUnderflowException e) {
+                    buffer.position(start);
+                    fill();
+                }
+                catch (UncheckedIOException e) {  // see Codec
+                    throw e.getCause();
+                }
+            }
+        }
+        int read_int() throws IOException {
+            while (buffer.remaining() < 4) fill();
+            return buffer.getInt();
+        }
+        long read_long() throws IOException {
+            while (buffer.remaining() < 8) fill();
+            return buffer.getLong();
+        }
+        long read_varint() throws IOException {
+            while (true) {
+                int start = buffer.position();
+                try {
+                    return Codec.get_varint(buffer);
+                }
+                catch (BufferUnderflowException e) {
+                    buffer.position(start);
+                    fill();
+                }
+            }
+        }
+    }//Reader
+}//ChannelIO
@@ -0,0 +1,107 @@
+package avltree;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+
+/* Converts values of type T to and from bytes, for the binary snapshots
+   written by AVLSet.writeTo and StringTrie.writeTo.
+
+   write is only called with at least size(x) bytes remaining in the
+   buffer.  read may be called with the encoding only partly in the buffer:
+   it then throws BufferUnderflowException (which ByteBuffer's get methods
+   do by themselves), and is called again from the same position once more
+   bytes have been read in.  An encoding that can't be valid (such as a
+   negative length) makes read throw an UncheckedIOException wrapping a
+   StreamCorruptedException, which the snapshot readers rethrow as is.
+*/
+public interface Codec<T>
+{
+    int size(T x);  // number of bytes write will produce
+    void write(T x, ByteBuffer out);
+    T read(ByteBuffer in);
+
+    Codec<Integer> INT = new Codec<Integer>() {
+        public int size(Integer x) { return 4; }
+        public void write(Integer x, ByteBuffer out) { out.putInt(x); }
+        public Integer read(ByteBuffer in) { return in.getInt(); }
+    };
+
+    Codec<Long> LONG = new Codec<Long>() {
+        public int size(Long x) { return 8; }
+        public void write(Long x, ByteBuffer out) { out.putLong(x); }
+        public Long read(ByteBuffer in) { return in.getLong(); }
+    };
+
+    Codec<Double> DOUBLE = new Codec<Double>() {
+        public int size(Double x) { return 8; }
+        public void write(Double x, ByteBuffer out) { out.putDouble(x); }
+        public Double read(ByteBuffer in) { return in.getDouble(); }
+    };
+
+    // UTF-8 bytes preceded by their number as a varint
+    Codec<String> STRING = new Codec<String>() {
+        public int size(String x) {
+            int n = utf8_length(x);
+            return varint_size(n) + n;
+        }
+        public void write(String x, ByteBuffer out) {
+            byte[] bytes = x.getBytes(StandardCharsets.UTF_8);
+            put_varint(out, bytes.length);
+            out.put(bytes);
+        }
+        public String read(ByteBuffer in) {
+            long n = get_varint(in);
+            if (n < 0 || n > Integer.MAX_VALUE)
+                throw corrupt("string length "+n);
+            if (in.remaining() < n) throw new BufferUnderflowException();
+            byte[] bytes = new byte[(int)n];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    static UncheckedIOException corrupt(String what) {
+        return new UncheckedIOException(new StreamCorruptedException("corrupt "+what));
+    }
+
+    ///// unsigned LEB128 varints: 7 bits per byte, high bit set if more follow
+
+    static int varint_size(long x) {
+        int n = 1;
+        while ((x >>>= 7) != 0) n++;
+        return n;
+    }
+    static void put_varint(ByteBuffer out, long x) {
+        while ((x & ~0x7fL) != 0) {
+            out.put((byte)((x & 0x7f) | 0x80));
+            x >>>= 7;
+        }
+        out.put((byte)x);
+    }
+    static long get_varint(ByteBuffer in) {
+        long x = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            x |= (long)(b & 0x7f) << shift;
+            if (b >= 0) return x;
+        }
+    }
+
+    // UTF-8 length without encoding; an unpaired surrogate becomes one byte
+    // ('?'), as String.getBytes does
+    static int utf8_length(String s) {
+        int n = 0;
+        for (int i=0;i<s.length();i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n += 1;
+            else if (c < 0x800) n += 2;
+            else if (Character.isHighSurrogate(c) && i+1 < s.length()
+                     && Character.isLowSurrogate(s.charAt(i+1))) { n += 4; i++; }
+            else if (Character.isSurrogate(c)) n += 1;
+            else n += 3;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,690 @@
+/* Concurrent AVL set for many readers and many writers, following
+   Bronson, Casper, Chafi and Olukotun, "A Practical Concurrent Binary
+   Search Tree" (PPoPP 2010).
+
+   The ideas, briefly:
+
+   - Reads take no locks.  Every node carries a version number.  A
+     rotation that moves keys out of a node's subtree first marks the
+     node as "changing" and bumps the version when done.  A search
+     remembers the version of each node it passes and re-validates it
+     after reading the next child.  If it changed, the search backs up
+     one level and tries again from there (hand-over-hand optimistic
+     validation).  Searches only ever retry locally, never from the root.
+
+   - Writes lock only the few nodes they modify: a new leaf is linked
+     while holding its parent's lock, and a rotation holds the locks of
+     the parent, the node and the child(ren) it moves, always acquired
+     top-down so there can be no deadlock.
+
+   - Removal of a node with two children just marks it absent, leaving
+     it in the tree as a "routing" node.  Routing nodes that end up with
+     fewer than two children are unlinked during rebalancing.  This avoids
+     the successor swap of AVLNode.remove/delete_max, which would move an
+     item between two far apart nodes.
+
+   - Balance is relaxed: after an update, heights are repaired and
+     rotations applied bottom-up one node at a time, each step under its
+     own small set of locks, so concurrent updates may briefly leave the
+     tree slightly out of balance.
+
+   The size is kept in a LongAdder, so updates don't all contend on one
+   counter.  Traversals (map_inorder, iterator, stream, min and max) are
+   weakly consistent: they see every item present for the whole
+   traversal, in order and at most once, but may or may not see
+   concurrent changes.  Following raw child pointers can't promise that,
+   since a rotation at a node being walked moves a subtree above it out
+   of the walk's reach.  So each step is a separate, validated search
+   for the successor of the item last returned (as the one for contains,
+   restarting locally on a version change), which costs O(log n) per item
+   but holds nothing between steps.  For consistent snapshots use
+   PersistentAVLSet.
+
+   ConcurrentAVLSetTest checks all this against ConcurrentSkipListSet.
+*/
+
+package avltree;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class ConcurrentAVLSet<T extends Comparable<? super T>>
+implements OrderedSet<T>
+{
+    // version bits: UNLINKED is a final state, CHANGING is set during a
+    // rotation that shrinks the node's subtree; the rest is a counter
+    static final long UNLINKED = 1L;
+    static final long CHANGING = 2L;
+    static final long VERSION_INCREMENT = 4L;
+
+    static long begin_change(long version) { return version | CHANGING; }
+    static long end_change(long version) {
+        return (version | CHANGING | UNLINKED) + 1;  // clears both bits, counts up
+    }
+    static boolean is_changing(long version) { return (version & CHANGING) != 0; }
+
+    // results of the attempt_ methods
+    static final int RETRY = -1, FALSE = 0, TRUE = 1;
+
+    // results of node_condition, besides a new height
+    static final int UNLINK_REQUIRED = -1;
+    static final int REBALANCE_REQUIRED = -2;
+    static final int NOTHING_REQUIRED = -3;
+
+    static final int SPINS = 100;
+
+    // holds the real root as its right child, so the root has a parent to lock
+    final CNode root_holder = new CNode(null,false,null);
+    final LongAdder size = new LongAdder();
+    Comparator<T> cmp = (x,y) -> x.compareTo(y);
+
+    public ConcurrentAVLSet() {}
+    public ConcurrentAVLSet(Comparator<T> cmp) {
+        if (cmp!=null) this.cmp = cmp;
+    }
+
+    ///// wrapper class methods
+
+    public int size() { return size.intValue(); }
+    public boolean is_empty() { return size.sum()==0; }
+    public int depth() { return height(root_holder.right); }
+
+    public boolean contains(T x) {
+        if (x==null) return false;
+        int r;
+        do {
+            r = attempt_get(x, root_holder, 1, root_holder.version);
+        } while (r==RETRY);
+        return r==TRUE;
+    }
+    public boolean search(T x) { return contains(x); }
+
+    public boolean insert(T x) {
+        if (x==null) return false;
+        int r;
+        do {
+            r = attempt_insert(x, root_holder, 1, root_holder.version);
+        } while (r==RETRY);
+        if (r==TRUE) size.increment();
+        return r==TRUE;
+    }
+
+    public boolean remove(T x) {
+        if (x==null) return false;
+        int r;
+        do {
+            r = attempt_remove(x, root_holder, 1, root_holder.version);
+        } while (r==RETRY);
+        if (r==TRUE) size.decrement();
+        return r==TRUE;
+    }
+
+    // weakly consistent in-order traversal, see above
+    public void map_inorder(Consumer<? super T> cf) {
+        if (cf==null) return;
+        T x = nearest(null,false,1);
+        while (x != null) {
+            cf.accept(x);
+            x = nearest(x,false,1);
+        }
+    }
+
+    // lazy: each next() is one successor search
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            T last = null;        // returned by next, null if none yet
+            T next = null;        // found by hasNext, null if not looked for
+            boolean done = false;
+            public boolean hasNext() {
+                if (next==null && !done) {
+                    next = nearest(last,false,1);
+                    done = (next==null);
+                }
+                return next != null;
+            }
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                last = next;
+                next = null;
+                return last;
+            }
+            public void remove() {
+                if (last==null) throw new IllegalStateException();
+                ConcurrentAVLSet.this.remove(last);
+            }
+        };
+    }
+
+    public Stream<T> stream() {
+        var items = iterator();
+        var sp = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                     Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.ORDERED
+                     | Spliterator.NONNULL | Spliterator.CONCURRENT) {
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (!items.hasNext()) return false;
+                action.accept(items.next());
+                return true;
+            }
+            public Comparator<? super T> getComparator() { return cmp; }
+        };
+        return StreamSupport.stream(sp,false);
+    }
+
+    public Optional<T> min() { return Optional.ofNullable(nearest(null,false,1)); }
+    public Optional<T> max() { return Optional.ofNullable(nearest(null,false,-1)); }
+
+    ///// search (no locks)
+
+    /* Looks for x below node, whose child in direction dir (<0 left, >0
+       right) is searched next.  node_version is the version of node read
+       by the caller before it decided to come here.  Returns RETRY if
+       node changed in the meantime, so the caller has to look again.
+    */
+    int attempt_get(T x, CNode node, int dir, long node_version) {
+        while (true) {
+            CNode child = node.child(dir);
+            if (node.version != node_version) return RETRY;
+            if (child==null) return FALSE;
+            int next_dir = cmp.compare(x, child.item);
+            if (next_dir==0) return child.present ? TRUE : FALSE;
+            long child_version = child.version;
+            if (is_changing(child_version)) wait_until_not_changing(child);
+            else if (child_version != UNLINKED && child==node.child(dir)) {
+                if (node.version != node_version) return RETRY;
+                int r = attempt_get(x, child, next_dir, child_version);
+                if (r != RETRY) return r;
+            }
+            // else: child was unlinked or replaced, read it again
+        }
+    }//attempt_get
+
+    /* The present item nearest to x on side s (1: the smallest > x,
+       -1: the largest < x; or = x too if inclusive), or null if there is
+       none.  A null x stands for the far end opposite s, so this is min
+       or max.  Validated like attempt_get, one level at a time.
+    */
+    T nearest(T x, boolean inclusive, int s) {
+        Object r;
+        do {
+            r = attempt_nearest(x, inclusive, s, root_holder, 1, root_holder.version);
+        } while (r==RETRY_NEAREST);
+        @SuppressWarnings("unchecked") T found = (T)r;
+        return found;
+    }
+
+    static final Object RETRY_NEAREST = new Object();
+
+    // the nearest item in the subtree node.child(dir), null if none there,
+    // or RETRY_NEAREST if node changed since node_version was read
+    Object attempt_nearest(T x, boolean inclusive, int s,
+                           CNode node, int dir, long node_version) {
+        while (true) {
+            CNode child = node.child(dir);
+            if (node.version != node_version) return RETRY_NEAREST;
+            if (child==null) return null;
+            long child_version = child.version;
+            if (is_changing(child_version)) {
+                wait_until_not_changing(child);
+                continue;
+            }
+            if (child_version==UNLINKED || child != node.child(dir)) continue;
+            if (node.version != node_version) return RETRY_NEAREST;
+            // c<0: child is on side s of x, so it is a candidate, though
+            // the nearer side of its subtree may hold a better one
+            int c = (x==null) ? -1 : s*cmp.compare(x, child.item);
+            Object r;
+            if (c<0 || (c==0 && inclusive)) {
+                if (c<0) {
+                    r = attempt_nearest(x, inclusive, s, child, -s, child_version);
+                    if (r==RETRY_NEAREST) continue;
+                    if (r != null) return r;
+                }
+                if (child.present) {
+                    if (child.version != child_version) continue;
+                    return child.item;
+                }
+            }
+            // the rest is on side s of child
+            r = attempt_nearest(x, inclusive, s, child, s, child_version);
+            if (r==RETRY_NEAREST) continue;
+            return r;
+        }
+    }//attempt_nearest
+
+    void wait_until_not_changing(CNode n) {
+        long version = n.version;
+        if (!is_changing(version)) return;
+        for (int i=0;i<SPINS;i++) {
+            if (n.version != version) return;
+            Thread.onSpinWait();
+        }
+        synchronized (n) {}  // the rotation holds this lock until it is done
+    }
+
+    ///// insert
+
+    int attempt_insert(T x, CNode node, int dir, long node_version) {
+        int r = RETRY;
+        do {
+            CNode child = node.child(dir);
+            if (node.version != node_version) return RETRY;
+            if (child==null) r = attempt_link(x, node, dir, node_version);
+            else {
+                int next_dir = cmp.compare(x, child.item);
+                if (next_dir==0) r = attempt_mark_present(child);
+                else {
+                    long child_version = child.version;
+                    if (is_changing(child_version)) wait_until_not_changing(child);
+                    else if (child_version != UNLINKED && child==node.child(dir)) {
+                        if (node.version != node_version) return RETRY;
+                        r = attempt_insert(x, child, next_dir, child_version);
+                    }
+                }
+            }
+        } while (r==RETRY);
+        return r;
+    }//attempt_insert
+
+    int attempt_link(T x, CNode node, int dir, long node_version) {
+        synchronized (node) {
+            if (node.version != node_version || node.child(dir) != null) return RETRY;
+            node.set_child(dir, new CNode(x,true,node));
+        }
+        fix_height_and_rebalance(node);
+        return TRUE;
+    }
+
+    // x is in a routing node: make it present again
+    int attempt_mark_present(CNode n) {
+        synchronized (n) {
+            if (n.version==UNLINKED) return RETRY;
+            if (n.present) return FALSE;
+            n.present = true;
+            return TRUE;
+        }
+    }
+
+    ///// remove
+
+    int attempt_remove(T x, CNode node, int dir, long node_version) {
+        int r = RETRY;
+        do {
+            CNode child = node.child(dir);
+            if (node.version != node_version) return RETRY;
+            if (child==null) return FALSE;
+            int next_dir = cmp.compare(x, child.item);
+            if (next_dir==0) r = attempt_remove_node(node, child);
+            else {
+                long child_version = child.version;
+                if (is_changing(child_version)) wait_until_not_changing(child);
+                else if (child_version != UNLINKED && child==node.child(dir)) {
+                    if (node.version != node_version) return RETRY;
+                    r = attempt_remove(x, child, next_dir, child_version);
+                }
+            }
+        } while (r==RETRY);
+        return r;
+    }//attempt_remove
+
+    boolean can_unlink(CNode n) { return n.left==null || n.right==null; }
+
+    int attempt_remove_node(CNode parent, CNode n) {
+        if (!n.present) return FALSE;
+        if (!can_unlink(n)) {  // two children: leave it as a routing node
+            synchronized (n) {
+                if (n.version==UNLINKED || can_unlink(n)) return RETRY;
+                if (!n.present) return FALSE;
+                n.present = false;
+                return TRUE;
+            }
+        }
+        synchronized (parent) {
+            if (parent.version==UNLINKED || n.parent != parent
+                || n.version==UNLINKED) return RETRY;
+            synchronized (n) {
+                if (!n.present) return FALSE;
+                n.present = false;
+                if (can_unlink(n)) {
+                    CNode splice = (n.left != null) ? n.left : n.right;
+                    if (parent.left==n) parent.left = splice;
+                    else parent.right = splice;
+                    if (splice != null) splice.parent = parent;
+                    n.version = UNLINKED;
+                }
+            }
+        }
+        fix_height_and_rebalance(parent);
+        return TRUE;
+    }//attempt_remove_node
+
+    ///// rebalancing
+
+    int height(CNode n) { return (n==null) ? 0 : n.height; }
+
+    // what has to be done at n, or its correct height if only that is off
+    int node_condition(CNode n) {
+        CNode l = n.left, r = n.right;
+        if ((l==null || r==null) && !n.present) return UNLINK_REQUIRED;
+        int hn = n.height, hl = height(l), hr = height(r);
+        int new_height = 1 + Math.max(hl,hr);
+        int bf = hr - hl;
+        if (bf < -1 || bf > 1) return REBALANCE_REQUIRED;
+        return (hn != new_height) ? new_height : NOTHING_REQUIRED;
+    }
+
+    // walks up from node, fixing heights and rotating, until nothing changes
+    void fix_height_and_rebalance(CNode node) {
+        while (node != null && node != root_holder) {
+            int c = node_condition(node);
+            if (c==NOTHING_REQUIRED || node.version==UNLINKED) return;
+            if (c != UNLINK_REQUIRED && c != REBALANCE_REQUIRED) {
+                synchronized (node) {
+                    node = fix_height_nl(node);
+                }
+            }
+            else {
+                CNode parent = node.parent;
+                synchronized (parent) {
+                    if (parent.version != UNLINKED && node.parent==parent) {
+                        synchronized (node) {
+                            node = rebalance_nl(parent, node);
+                        }
+                    }
+                    // else the parent changed under us, look again
+                }
+            }
+        }
+    }//fix_height_and_rebalance
+
+    // _nl: the caller holds the lock of n.  Returns the next node to fix.
+    CNode fix_height_nl(CNode n) {
+        int c = node_condition(n);
+        switch (c) {
+        case REBALANCE_REQUIRED:
+        case UNLINK_REQUIRED:
+            return n;  // need the parent's lock too
+        case NOTHING_REQUIRED:
+            return next_up(n);
+        default:
+            n.height = c;
+            return n.parent;
+        }
+    }
+
+    // the caller holds the locks of parent and n
+    CNode rebalance_nl(CNode parent, CNode n) {
+        CNode l = n.left, r = n.right;
+        if ((l==null || r==null) && !n.present) {
+            if (attempt_unlink_nl(parent, n)) return fix_height_nl(parent);
+            else return n;
+        }
+        int hn = n.height, hl = height(l), hr = height(r);
+        int new_height = 1 + Math.max(hl,hr);
+        int bf = hr - hl;
+        if (bf < -1) return rebalance_to_right_nl(parent, n, l, hr);
+        else if (bf > 1) return rebalance_to_left_nl(parent, n, r, hl);
+        else if (new_height != hn) {
+            n.height = new_height;
+            return fix_height_nl(parent);
+        }
+        else return next_up(n);
+    }//rebalance_nl
+
+    /* When a rotation hands back a node below it for more work (a node to
+       unlink, or one still out of balance), the fix of the rotated
+       subtree's parent is put off, and the walk back up from that work can
+       stop at the subtree root if its height comes out unchanged.  So
+       before stopping, look one level further up.
+    */
+    CNode next_up(CNode n) {
+        CNode parent = n.parent;
+        if (parent==null || parent==root_holder) return null;
+        return (node_condition(parent)==NOTHING_REQUIRED) ? null : parent;
+    }
+
+    boolean attempt_unlink_nl(CNode parent, CNode n) {
+        CNode parent_l = parent.left, parent_r = parent.right;
+        if (parent_l != n && parent_r != n) return false;  // not our child anymore
+        CNode l = n.left, r = n.right;
+        if (l != null && r != null) return false;
+        CNode splice = (l != null) ? l : r;
+        if (parent_l==n) parent.left = splice;
+        else parent.right = splice;
+        if (splice != null) splice.parent = parent;
+        n.version = UNLINKED;
+        return true;
+    }
+
+    // left side of n too deep: LL or LR, as in AVLNode.adjust
+    CNode rebalance_to_right_nl(CNode parent, CNode n, CNode l, int hr0) {
+        synchronized (l) {
+            int hl = l.height;
+            if (hl - hr0 <= 1) return n;  // fixed by someone else meanwhile
+            CNode lr = l.right;
+            int hll0 = height(l.left);
+            int hlr0 = height(lr);
+            if (hll0 >= hlr0) return LL_nl(parent, n, l, hr0, hll0, lr, hlr0);
+            synchronized (lr) {
+                int hlr = lr.height;
+                if (hll0 >= hlr) return LL_nl(parent, n, l, hr0, hll0, lr, hlr);
+                int hlrl = height(lr.left);
+                int b = hll0 - hlrl;
+                if (b >= -1 && b <= 1) return LR_nl(parent, n, l, hr0, hll0, lr, hlrl);
+            }
+            // l itself has to be fixed first, by rotating it to the left
+            return rebalance_to_left_nl(n, l, lr, hll0);
+        }
+    }//rebalance_to_right_nl
+
+    // right side of n too deep: RR or RL
+    CNode rebalance_to_left_nl(CNode parent, CNode n, CNode r, int hl0) {
+        synchronized (r) {
+            int hr = r.height;
+            if (hl0 - hr >= -1) return n;
+            CNode rl = r.left;
+            int hrl0 = height(rl);
+            int hrr0 = height(r.right);
+            if (hrr0 >= hrl0) return RR_nl(parent, n, r, hl0, hrl0, rl, hrr0);
+            synchronized (rl) {
+                int hrl = rl.height;
+                if (hrr0 >= hrl) return RR_nl(parent, n, r, hl0, hrl, rl, hrr0);
+                int hrlr = height(rl.right);
+                int b = hrr0 - hrlr;
+                if (b >= -1 && b <= 1) return RL_nl(parent, n, r, hl0, hrr0, rl, hrlr);
+            }
+            return rebalance_to_right_nl(n, r, rl, hrr0);
+        }
+    }//rebalance_to_left_nl
+
+    /* The rotations.  Only nodes whose subtree loses keys are marked as
+       changing: a search that is in a subtree that only gains keys can
+       carry on undisturbed.  Each returns the next node that needs
+       attention, or null.
+    */
+    CNode LL_nl(CNode parent, CNode n, CNode l, int hr, int hll, CNode lr, int hlr) {
+        long n_version = n.version;
+        CNode parent_l = parent.left;
+        n.version = begin_change(n_version);
+
+        n.left = lr;
+        if (lr != null) lr.parent = n;
+        l.right = n;
+        n.parent = l;
+        if (parent_l==n) parent.left = l;
+        else parent.right = l;
+        l.parent = parent;
+
+        int hn = 1 + Math.max(hlr,hr);
+        n.height = hn;
+        l.height = 1 + Math.max(hll,hn);
+
+        n.version = end_change(n_version);
+
+        int bf_n = hr - hlr;
+        if (bf_n < -1 || bf_n > 1) return n;
+        if ((lr==null || hr==0) && !n.present) return n;
+        int bf_l = hn - hll;
+        if (bf_l < -1 || bf_l > 1) return l;
+        if (hll==0 && !l.present) return l;
+        return fix_height_nl(parent);
+    }//LL_nl
+
+    CNode RR_nl(CNode parent, CNode n, CNode r, int hl, int hrl, CNode rl, int hrr) {
+        long n_version = n.version;
+        CNode parent_l = parent.left;
+        n.version = begin_change(n_version);
+
+        n.right = rl;
+        if (rl != null) rl.parent = n;
+        r.left = n;
+        n.parent = r;
+        if (parent_l==n) parent.left = r;
+        else parent.right = r;
+        r.parent = parent;
+
+        int hn = 1 + Math.max(hl,hrl);
+        n.height = hn;
+        r.height = 1 + Math.max(hn,hrr);
+
+        n.version = end_change(n_version);
+
+        int bf_n = hrl - hl;
+        if (bf_n < -1 || bf_n > 1) return n;
+        if ((rl==null || hl==0) && !n.present) return n;
+        int bf_r = hrr - hn;
+        if (bf_r < -1 || bf_r > 1) return r;
+        if (hrr==0 && !r.present) return r;
+        return fix_height_nl(parent);
+    }//RR_nl
+
+    // the caller also holds the lock of lr
+    CNode LR_nl(CNode parent, CNode n, CNode l, int hr, int hll, CNode lr, int hlrl) {
+        long n_version = n.version;
+        long l_version = l.version;
+        CNode parent_l = parent.left;
+        CNode lrl = lr.left, lrr = lr.right;
+        int hlrr = height(lrr);
+        n.version = begin_change(n_version);
+        l.version = begin_change(l_version);
+
+        n.left = lrr;
+        if (lrr != null) lrr.parent = n;
+        l.right = lrl;
+        if (lrl != null) lrl.parent = l;
+        lr.left = l;
+        l.parent = lr;
+        lr.right = n;
+        n.parent = lr;
+        if (parent_l==n) parent.left = lr;
+        else parent.right = lr;
+        lr.parent = parent;
+
+        int hn = 1 + Math.max(hlrr,hr);
+        n.height = hn;
+        int hl = 1 + Math.max(hll,hlrl);
+        l.height = hl;
+        lr.height = 1 + Math.max(hl,hn);
+
+        n.version = end_change(n_version);
+        l.version = end_change(l_version);
+
+        int bf_n = hr - hlrr;
+        if (bf_n < -1 || bf_n > 1) return n;
+        if ((lrr==null || hr==0) && !n.present) return n;
+        if ((hll==0 || lrl==null) && !l.present) return l;  // to be unlinked
+        int bf_lr = hn - hl;
+        if (bf_lr < -1 || bf_lr > 1) return lr;
+        return fix_height_nl(parent);
+    }//LR_nl
+
+    // the caller also holds the lock of rl
+    CNode RL_nl(CNode parent, CNode n, CNode r, int hl, int hrr, CNode rl, int hrlr) {
+        long n_version = n.version;
+        long r_version = r.version;
+        CNode parent_l = parent.left;
+        CNode rll = rl.left, rlr = rl.right;
+        int hrll = height(rll);
+        n.version = begin_change(n_version);
+        r.version = begin_change(r_version);
+
+        n.right = rll;
+        if (rll != null) rll.parent = n;
+        r.left = rlr;
+        if (rlr != null) rlr.parent = r;
+        rl.right = r;
+        r.parent = rl;
+        rl.left = n;
+        n.parent = rl;
+        if (parent_l==n) parent.left = rl;
+        else parent.right = rl;
+        rl.parent = parent;
+
+        int hn = 1 + Math.max(hl,hrll);
+        n.height = hn;
+        int hr = 1 + Math.max(hrlr,hrr);
+        r.height = hr;
+        rl.height = 1 + Math.max(hn,hr);
+
+        n.version = end_change(n_version);
+        r.version = end_change(r_version);
+
+        int bf_n = hrll - hl;
+        if (bf_n < -1 || bf_n > 1) return n;
+        if ((rll==null || hl==0) && !n.present) return n;
+        if ((hrr==0 || rlr==null) && !r.present) return r;  // to be unlinked
+        int bf_rl = hr - hn;
+        if (bf_rl < -1 || bf_rl > 1) return rl;
+        return fix_height_nl(parent);
+    }//RL_nl
+
+    // null if n's subtree is ordered with correct heights and no node out
+    // of balance, once all updates have finished; else what is wrong.
+    // For the tests.
+    String check_balance(CNode n) {
+        if (n==null) return null;
+        if (n.left != null && cmp.compare(n.left.item,n.item) >= 0) return "order at "+n;
+        if (n.right != null && cmp.compare(n.right.item,n.item) <= 0) return "order at "+n;
+        String below = check_balance(n.left);
+        if (below==null) below = check_balance(n.right);
+        if (below != null) return below;
+        int hl = height(n.left), hr = height(n.right);
+        if (n.height != 1+Math.max(hl,hr)) return "height at "+n;
+        if (Math.abs(hr-hl) > 1) return "balance at "+n;
+        return null;
+    }
+
+  //////////////////////////////// inner class //////////////////
+
+  class CNode
+  {
+    final T item;
+    volatile boolean present;  // false for routing nodes
+    volatile int height;
+    volatile long version = 0;
+    volatile CNode parent, left, right;
+
+    CNode(T item, boolean present, CNode parent) {
+        this.item = item;
+        this.present = present;
+        this.parent = parent;
+        this.height = 1;
+    }
+
+    CNode child(int dir) { return (dir<0) ? left : right; }
+    void set_child(int dir, CNode c) {
+        if (dir<0) left = c;
+        else right = c;
+    }
+
+    @Override
+    public String toString() { return item+""; }
+  }//CNode
+
+}//ConcurrentAVLSet
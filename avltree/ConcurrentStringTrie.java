@@ -0,0 +1,252 @@
+/* Concurrent StringTrie: persistent nodes and a compare-and-set root.
+
+   The nodes of StringTrie are updated in place, so a reader walking the
+   trie while a writer adds a child can see it half-built, and size and
+   nodes are plain ints.  Here, as in PersistentAVLSet, nodes never
+   change once built.  Setting or removing a key copies only the nodes on
+   its path (one per char), each with its child for the next char
+   replaced, and shares every other subtree with the previous version.
+   The new root is then swapped in with a compare-and-set; a writer that
+   loses the race re-reads the root and redoes its path copy.  So:
+
+   - get, set, remove and and_modify are linearizable: each takes effect
+     at one successful read or compare-and-set of the root.
+   - and_modify is atomic: the value it stores is computed from the value
+     it replaces, with no other write in between.  Under contention the
+     modifier may be called more than once, so it should have no side
+     effects.
+   - Reads take no locks and never see a partial update.
+   - snapshot() and stream() just hold on to the root of the moment, so
+     they are O(1), and a stream sees one consistent version however long
+     it runs.
+
+   Every node also counts the values and the nodes in its subtree, so
+   size(), nodes() and count(prefix) are exact for the version they read,
+   and cost nothing extra to keep, since each write already copies the
+   path above the change.  Removing a value also drops the nodes that no
+   longer lead to any value, so there is nothing to clean up.
+
+   Writers all contend on the root, so this suits read-mostly use (such
+   as autocomplete over a dictionary that changes now and then): reads
+   scale with threads, writes don't.
+
+   The children of a node are kept in a sorted char[] and a matching
+   array of nodes, searched like FrozenStringTrie's labels.
+*/
+
+package avltree;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class ConcurrentStringTrie<VT>
+{
+    static final char[] NO_LABELS = new char[0];
+    static final int LINEAR_MAX = 8;  // children scanned linearly up to this
+
+    final CNode[] no_kids = node_array(0);
+    final CNode empty = new CNode(null, NO_LABELS, no_kids);
+    final AtomicReference<CNode> root;
+
+    public ConcurrentStringTrie() { root = new AtomicReference<CNode>(empty); }
+    // shares the given version
+    ConcurrentStringTrie(CNode version) {
+        root = new AtomicReference<CNode>(version);
+    }
+
+    // CNode is generic through VT; ConcurrentStringTrie<?>.CNode[] is not
+    @SuppressWarnings("unchecked")
+    CNode[] node_array(int n) { return (CNode[])new ConcurrentStringTrie<?>.CNode[n]; }
+
+    // O(1): a new trie that starts out as this version and evolves separately
+    public ConcurrentStringTrie<VT> snapshot() {
+        return new ConcurrentStringTrie<VT>(root.get());
+    }
+
+    public int size() { return root.get().size; }
+    public int nodes() { return root.get().nodes; }
+    public double load_factor() {
+        CNode version = root.get();
+        return version.size*1.0 / version.nodes;
+    }
+
+    // the node for key in the given version, or null
+    CNode node(CNode version, String key) {
+        CNode current = version;
+        for (int k=0;k<key.length() && current!=null;k++)
+            current = current.child(key.charAt(k));
+        return current;
+    }
+
+    public Optional<VT> get(String key) {
+        if (key==null) return Optional.empty();
+        CNode n = node(root.get(),key);
+        return (n==null) ? Optional.empty() : Optional.ofNullable(n.item);
+    }
+
+    // number of keys that start with prefix, in O(prefix length)
+    public int count(String prefix) {
+        if (prefix==null) return 0;
+        CNode n = node(root.get(),prefix);
+        return (n==null) ? 0 : n.size;
+    }
+
+    // insert or change key-value pair, return previous value
+    public Optional<VT> set(String key, VT val) {
+        return and_modify(key, x -> val);
+    }
+    public Optional<VT> remove(String key) {
+        return and_modify(key, x -> null);
+    }
+
+    // as in StringTrie: the value becomes modifier(previous value), or is
+    // removed if that is null; returns the previous value
+    public Optional<VT> and_modify(String key,
+                                   Function<Optional<VT>,? extends VT> modifier) {
+        if (key==null || modifier==null) return Optional.empty();
+        int length = key.length();
+        CNode[] path = node_array(length+1);  // nodes for key[0..d)
+        while (true) {
+            CNode current = root.get();
+            path[0] = current;
+            int d = 0;
+            while (d < length) {
+                CNode next = path[d].child(key.charAt(d));
+                if (next==null) break;
+                path[++d] = next;
+            }
+            VT old = (d==length) ? path[d].item : null;
+            VT value = modifier.apply(Optional.ofNullable(old));
+            if (value==old) return Optional.ofNullable(old);  // nothing to write
+            // the new node for key[0..d), or null if it is now empty
+            CNode n;
+            if (d==length) n = path[d].with_item(value);
+            else {  // value isn't null: add the missing nodes
+                n = new CNode(value, NO_LABELS, no_kids);
+                for (int i=length-1;i>d;i--) n = new CNode(null, new char[]{key.charAt(i)}, one(n));
+                n = path[d].with_child(key.charAt(d),n);
+            }
+            for (int i=d-1;i>=0;i--) n = path[i].with_child(key.charAt(i),n);
+            if (n==null) n = empty;
+            if (root.compareAndSet(current,n)) return Optional.ofNullable(old);
+        }
+    }//and_modify
+
+    CNode[] one(CNode n) {
+        CNode[] kids = node_array(1);
+        kids[0] = n;
+        return kids;
+    }
+
+    ///// streams, each of one version
+
+    public Stream<SVPair<VT>> stream() { return root.get().stream("",0x7fffffff); }
+    public Stream<SVPair<VT>> stream(String prefix) { return stream(prefix,0); }
+    public Stream<SVPair<VT>> stream(String prefix, int depth) {
+        if (prefix==null) return Stream.empty();
+        if (depth<1) depth = 0x7fffffff;
+        CNode n = node(root.get(),prefix);
+        return (n==null) ? Stream.empty() : n.stream(prefix,depth);
+    }
+
+  //////////////////////////////// inner class //////////////////
+
+  final class CNode
+  {
+    final VT item;         // null if none
+    final char[] labels;   // chars of the children, ascending
+    final CNode[] kids;    // kids[i] is the child for labels[i]
+    final int size;        // values in this subtree
+    final int nodes;       // nodes in this subtree
+
+    CNode(VT item, char[] labels, CNode[] kids) {
+        this.item = item;
+        this.labels = labels;
+        this.kids = kids;
+        int s = (item==null) ? 0 : 1, n = 1;
+        for (var kid : kids) {
+            s += kid.size;
+            n += kid.nodes;
+        }
+        size = s;
+        nodes = n;
+    }
+
+    // position of c in labels, or -(insertion point)-1
+    int find(char c) {
+        int lo = 0, hi = labels.length - 1;
+        if (hi < 0) return -1;
+        // the chars are distinct and ascending, so c can't be beyond
+        // c - labels[0], and is right there if there are no gaps
+        int d = c - labels[0];
+        if (d < 0) return -1;
+        if (d <= hi) {
+            if (labels[d]==c) return d;
+            hi = d-1;
+        }
+        if (hi-lo < LINEAR_MAX) {
+            int i = lo;
+            while (i <= hi && labels[i] < c) i++;
+            return (i <= hi && labels[i]==c) ? i : -i-1;
+        }
+        return Arrays.binarySearch(labels,lo,hi+1,c);
+    }
+
+    CNode child(char c) {
+        int i = find(c);
+        return (i>=0) ? kids[i] : null;
+    }
+
+    // copies; null stands for a node with no value and no children
+    CNode with_item(VT x) {
+        if (x==null && kids.length==0) return null;
+        return new CNode(x,labels,kids);
+    }
+
+    CNode with_child(char c, CNode child) {
+        int i = find(c);
+        char[] new_labels;
+        CNode[] new_kids;
+        if (i>=0 && child!=null) {  // replace
+            new_labels = labels;
+            new_kids = kids.clone();
+            new_kids[i] = child;
+        }
+        else if (i>=0) {  // remove
+            if (item==null && kids.length==1) return null;
+            new_labels = new char[labels.length-1];
+            new_kids = node_array(kids.length-1);
+            System.arraycopy(labels,0,new_labels,0,i);
+            System.arraycopy(labels,i+1,new_labels,i,labels.length-i-1);
+            System.arraycopy(kids,0,new_kids,0,i);
+            System.arraycopy(kids,i+1,new_kids,i,kids.length-i-1);
+        }
+        else if (child!=null) {  // add
+            i = -i-1;
+            new_labels = new char[labels.length+1];
+            new_kids = node_array(kids.length+1);
+            System.arraycopy(labels,0,new_labels,0,i);
+            System.arraycopy(labels,i,new_labels,i+1,labels.length-i);
+            System.arraycopy(kids,0,new_kids,0,i);
+            System.arraycopy(kids,i,new_kids,i+1,kids.length-i);
+            new_labels[i] = c;
+            new_kids[i] = child;
+        }
+        else return this;
+        return new CNode(item,new_labels,new_kids);
+    }//with_child
+
+    Stream<SVPair<VT>> stream(String prefix, int depth) {
+        if (depth<1) return Stream.empty();
+        return
+            Stream.concat(Stream.ofNullable(item).map(x -> new SVPair<VT>(prefix,x)),
+                          IntStream.range(0,kids.length)
+                          .boxed()
+                          .flatMap(i -> kids[i].stream(prefix+labels[i],depth-1)));
+    }
+  }//CNode
+
+}//ConcurrentStringTrie
@@ -0,0 +1,310 @@
+/* Read-only, array-packed StringTrie, made by StringTrie.freeze().
+
+   The nodes are numbered in breadth-first order, root 0, children in
+   char order, so the children of every node are consecutive numbers and
+   the whole structure is a handful of flat arrays:
+
+       first[i]      the first child of node i; its children are
+                     first[i] .. first[i+1]-1  (first has nodes+1 entries)
+       labels[i]     the char on the edge into node i
+       has_value     one bit per node
+       value_rank    the number of bits set in has_value before each word,
+                     so the value of node i is value number
+                     value_rank[i/64] + (bits set before i in its word)
+
+   That is about 6 bytes a node, against over 70 for a StringTrie.Node
+   with its children, and a lookup touches two small array ranges per
+   char instead of chasing objects around the heap.  A child is found
+   directly when the chars of its siblings have no gaps (digits, say),
+   and otherwise by scanning, or for many children binary searching, the
+   labels.
+
+   writeTo saves it in a file whose sections are these arrays as they are
+   (big-endian), followed by the values, encoded by a Codec, with their
+   offsets.  open(file,codec) maps the file read-only and uses the
+   sections in place, so opening is O(1), nothing is copied onto the heap,
+   and processes that open the same file share one copy of it in the page
+   cache.  Values are decoded as they are looked up.  Each section is
+   mapped as one buffer, so none of them can exceed 2GB.
+
+   Lookups never change anything, so any number of threads may share a
+   FrozenStringTrie, except for the continuation, which keeps its state in
+   the trie as it does in StringTrie.  Threads that need their own should
+   each open the file, or freeze, separately.
+*/
+
+package avltree;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class FrozenStringTrie<VT>
+{
+    static final long MAGIC = 0x465452494530310aL;  // "FTRIE01\n"
+    static final int HEADER = 64;
+    static final int LINEAR_MAX = 8;  // children scanned linearly up to this
+
+    final int nodes;
+    final int size;  // number of values
+    final IntBuffer first;
+    final CharBuffer labels;
+    final LongBuffer has_value;
+    final IntBuffer value_rank;
+    // values: either on the heap, or encoded in a mapped file
+    final Object[] values;
+    final LongBuffer value_offsets;
+    final ByteBuffer value_data;
+    final Codec<VT> codec;
+
+    FrozenStringTrie(int nodes, int size, IntBuffer first, CharBuffer labels,
+                     LongBuffer has_value, IntBuffer value_rank, Object[] values,
+                     LongBuffer value_offsets, ByteBuffer value_data, Codec<VT> codec) {
+        this.nodes = nodes;  this.size = size;
+        this.first = first;  this.labels = labels;
+        this.has_value = has_value;  this.value_rank = value_rank;
+        this.values = values;
+        this.value_offsets = value_offsets;  this.value_data = value_data;
+        this.codec = codec;
+    }
+
+    public int size() { return size; }
+    public int nodes() { return nodes; }
+    public double load_factor() { return size*1.0 / nodes; }
+
+    ///// building, from a StringTrie
+
+    static <VT> FrozenStringTrie<VT> build(StringTrie<VT> trie) {
+        int n = trie.nodes;
+        var first = new int[n+1];
+        var labels = new char[n];
+        int words = (n+63) >>> 6;
+        var bits = new long[words];
+        var ranks = new int[words];
+        var values = new Object[trie.size()];
+        var queue = new ArrayList<StringTrie<VT>.Node>(n);  // in node order
+        queue.add(trie.root);
+        int v = 0;
+        for (int i=0;i<n;i++) {
+            var node = queue.get(i);
+            queue.set(i,null);
+            first[i] = queue.size();
+            for (int s=0;s<node.slots();s++) {
+                var child = node.slot(s);
+                if (child==null) continue;
+                labels[queue.size()] = node.slot_label(s);
+                queue.add(child);
+            }
+            if ((i & 63)==0) ranks[i>>>6] = v;
+            if (node.item.isPresent()) {
+                bits[i>>>6] |= 1L << i;
+                values[v++] = node.item.get();
+            }
+        }
+        first[n] = n;
+        return new FrozenStringTrie<VT>(n, v, IntBuffer.wrap(first), CharBuffer.wrap(labels),
+                                        LongBuffer.wrap(bits), IntBuffer.wrap(ranks),
+                                        values, null, null, null);
+    }
+
+    ///// lookups
+
+    // the child of node i for char c, or -1
+    int child(int i, char c) {
+        int lo = first.get(i), hi = first.get(i+1) - 1;
+        if (lo > hi) return -1;
+        // the chars are distinct and ascending, so c can't be beyond
+        // lo + (c - labels[lo]), and is right there if there are no gaps
+        int d = c - labels.get(lo);
+        if (d < 0) return -1;
+        if (d <= hi-lo) {
+            if (labels.get(lo+d)==c) return lo+d;
+            hi = lo+d-1;
+        }
+        if (hi-lo < LINEAR_MAX) {
+            for (int j=lo;j<=hi;j++) if (labels.get(j)==c) return j;
+            return -1;
+        }
+        while (lo <= hi) {
+            int mid = (lo+hi) >>> 1;
+            char m = labels.get(mid);
+            if (m < c) lo = mid+1;
+            else if (m > c) hi = mid-1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // the node for key, or -1
+    int node(String key) {
+        int i = 0;
+        for (int k=0;k<key.length() && i>=0;k++) i = child(i,key.charAt(k));
+        return i;
+    }
+
+    boolean has_value(int i) { return (has_value.get(i>>>6) & (1L << i)) != 0; }
+
+    Optional<VT> item(int i) {
+        if (i<0 || !has_value(i)) return Optional.empty();
+        long word = has_value.get(i>>>6) & ((1L << i) - 1);  // bits before i
+        return Optional.of(value(value_rank.get(i>>>6) + Long.bitCount(word)));
+    }
+
+    @SuppressWarnings("unchecked")
+    VT value(int v) {
+        if (values != null) return (VT)values[v];
+        int offset = (int)value_offsets.get(v);
+        return codec.read(value_data.duplicate().position(offset));
+    }
+
+    public Optional<VT> get(String key) {
+        if (key==null) return Optional.empty();
+        return item(node(key));
+    }
+    public boolean contains(String key) { return get(key).isPresent(); }
+
+    // key-value pairs in key order, as from StringTrie.stream
+    public Stream<SVPair<VT>> stream() { return stream(0,"",0x7fffffff); }
+    public Stream<SVPair<VT>> stream(String prefix) { return stream(prefix,0); }
+    public Stream<SVPair<VT>> stream(String prefix, int depth) {
+        if (prefix==null) return Stream.empty();
+        if (depth<1) depth = 0x7fffffff;
+        int i = node(prefix);
+        if (i<0) return Stream.empty();
+        return stream(i,prefix,depth);
+    }
+
+    Stream<SVPair<VT>> stream(int i, String prefix, int depth) {
+        if (depth<1) return Stream.empty();
+        return
+            Stream.concat(item(i).stream().map(x -> new SVPair<VT>(prefix,x)),
+                          IntStream.range(first.get(i),first.get(i+1))
+                          .boxed()
+                          .flatMap(j -> stream(j,prefix+labels.get(j),depth-1)));
+    }
+
+    ///// continuation, as in StringTrie
+
+    int continue_node = 0;  // -1 once the key has run off the trie
+    String continue_key = "";
+
+    public void reset_continuation() {
+        continue_node = 0;
+        continue_key = "";
+    }
+    public void begin_continuation(String start) {
+        if (start==null) return;
+        continue_key = start;
+        continue_node = node(start);
+    }
+    public boolean can_continue() { return continue_node >= 0; }
+    public String current_key() { return continue_key; }
+    public Optional<VT> current_val() { return item(continue_node); }
+    public boolean continue_search(char nextchar) {
+        continue_key = continue_key + nextchar;
+        if (continue_node >= 0) continue_node = child(continue_node,nextchar);
+        return continue_node >= 0;
+    }
+    public Stream<SVPair<VT>> current_stream(int depth) {
+        if (continue_node < 0) return Stream.empty();
+        return stream(continue_node,continue_key,depth);
+    }
+    public Stream<SVPair<VT>> current_stream() {
+        return current_stream(0x7fffffff);
+    }
+
+    ///// files
+
+    /* Layout, all big-endian, each section starting at a multiple of 8:
+
+           header      MAGIC, nodes (int), values (int), value bytes (long)
+           first       nodes+1 ints
+           labels      nodes chars
+           has_value   (nodes+63)/64 longs
+           value_rank  (nodes+63)/64 ints
+           offsets     values longs, where each value starts in the data
+           data        the values, encoded by the codec
+    */
+    public void writeTo(WritableByteChannel channel, Codec<? super VT> codec)
+    throws IOException {
+        int words = (nodes+63) >>> 6;
+        long data_bytes = 0;
+        for (int v=0;v<size;v++) data_bytes += codec.size(value(v));
+        var out = new ChannelIO.Writer(channel);
+        out.write_long(MAGIC);
+        out.write_int(nodes);
+        out.write_int(size);
+        out.write_long(data_bytes);
+        long written = 24;
+        written = pad(out,written,HEADER);
+        for (int i=0;i<=nodes;i++) out.write_int(first.get(i));
+        written = pad(out,written+4L*(nodes+1),8);
+        for (int i=0;i<nodes;i++) out.write_char(labels.get(i));
+        written = pad(out,written+2L*nodes,8);
+        for (int w=0;w<words;w++) out.write_long(has_value.get(w));
+        for (int w=0;w<words;w++) out.write_int(value_rank.get(w));
+        written = pad(out,written+12L*words,8);
+        long offset = 0;
+        for (int v=0;v<size;v++) {
+            out.write_long(offset);
+            offset += codec.size(value(v));
+        }
+        for (int v=0;v<size;v++) out.write(codec,value(v));
+        out.flush();
+    }
+
+    // writes zeros from position written up to the next multiple of align
+    static long pad(ChannelIO.Writer out, long written, int align) throws IOException {
+        while (written % align != 0) {
+            out.write_char((char)0);  // sections are all a multiple of 2 long
+            written += 2;
+        }
+        return written;
+    }
+
+    // maps a file written by writeTo, read-only; the file is closed but
+    // the mappings stay valid until the trie is garbage collected
+    public static <VT> FrozenStringTrie<VT> open(Path file, Codec<VT> codec) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER) throw new IOException(file + " is not a frozen trie");
+            var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getLong(0) != MAGIC) throw new IOException(file + " is not a frozen trie");
+            int nodes = header.getInt(8), size = header.getInt(12);
+            long data_bytes = header.getLong(16);
+            int words = (nodes+63) >>> 6;
+            long at = HEADER;
+            var first = map(channel, at, 4L*(nodes+1)).asIntBuffer();
+            at = align(at + 4L*(nodes+1));
+            var labels = map(channel, at, 2L*nodes).asCharBuffer();
+            at = align(at + 2L*nodes);
+            var has_value = map(channel, at, 8L*words).asLongBuffer();
+            at += 8L*words;
+            var value_rank = map(channel, at, 4L*words).asIntBuffer();
+            at = align(at + 4L*words);
+            var offsets = map(channel, at, 8L*size).asLongBuffer();
+            at += 8L*size;
+            var data = map(channel, at, data_bytes);
+            if (at + data_bytes != channel.size()) throw new IOException(file + " has the wrong length");
+            return new FrozenStringTrie<VT>(nodes, size, first, labels, has_value, value_rank,
+                                            null, offsets, data, codec);
+        }
+    }
+
+    static long align(long at) { return (at+7) & ~7L; }
+
+    static ByteBuffer map(FileChannel channel, long at, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) throw new IOException("section too large to map");
+        if (at + length > channel.size()) throw new IOException("frozen trie file is truncated");
+        return channel.map(FileChannel.MapMode.READ_ONLY, at, length);
+    }
+
+}//FrozenStringTrie
@@ -0,0 +1,223 @@
+/* AVL set of primitive ints.
+
+   AVLSet<Integer> boxes every key, and each AVLNode carries, besides the
+   item reference, a hidden pointer to the enclosing set (it's an inner
+   class) and a subtree count.  Every comparison also goes through the
+   Comparator lambda in BstSet.cmp.  Here the key is stored in the node
+   itself, compared with < and >, and the nodes are a static nested class,
+   so there is no outer pointer.  An empty subtree is just null: a Nil
+   object per set would need the outer pointer again.
+
+   With compressed oops a node is 32 bytes (12 header, 4 key, two 4-byte
+   references, 4 height, padding).  Measured on a million keys that is
+   about half of what AVLSet<Integer> takes: an AVLNode has two outer pointers
+   (one from Node, one from AVLNode) and a count, plus the boxed Integer.
+   The balancing is the same as in AVLSet: rotations swap keys so that a
+   node stays at the root of its subtree.
+*/
+
+package avltree;
+import java.util.NoSuchElementException;
+import java.util.OptionalInt;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+public class IntAVLSet
+{
+    Node root = null;
+    int size = 0;
+
+    public IntAVLSet() {}
+
+    public int size() { return size; }
+    public boolean is_empty() { return size==0; }
+    public int depth() { return depth(root); }
+
+    static int depth(Node t) { return t==null ? 0 : t.height; }
+
+    // non-recursive
+    public boolean contains(int x) {
+        Node current = root;
+        while (current != null) {
+            if (x < current.key) current = current.left;
+            else if (x > current.key) current = current.right;
+            else return true;
+        }
+        return false;
+    }
+    public boolean search(int x) { return contains(x); }
+
+    // returns false if x was already present
+    public boolean insert(int x) {
+        int prev_size = size;
+        root = insert(root,x);
+        return size != prev_size;
+    }
+    Node insert(Node t, int x) {
+        if (t==null) { size++; return new Node(x); }
+        if (x < t.key) t.left = insert(t.left,x);
+        else if (x > t.key) t.right = insert(t.right,x);
+        else return t;
+        t.adjust();
+        return t;
+    }//insert
+
+    // returns false if x wasn't present
+    public boolean remove(int x) {
+        int prev_size = size;
+        root = remove(root,x);
+        return size != prev_size;
+    }
+    Node remove(Node t, int x) {
+        if (t==null) return null;
+        if (x < t.key) t.left = remove(t.left,x);
+        else if (x > t.key) t.right = remove(t.right,x);
+        else { // found it
+            size--;
+            if (t.left==null) return t.right;
+            t.left = delete_max(t.left,t);  // replace by largest key on left
+        }
+        t.adjust();
+        return t;
+    }//remove
+
+    Node delete_max(Node t, Node to_modify) {
+        if (t.right==null) {
+            to_modify.key = t.key;
+            return t.left;
+        }
+        t.right = delete_max(t.right,to_modify);
+        t.adjust();
+        return t;
+    }//delete_max
+
+    public OptionalInt min() {
+        if (root==null) return OptionalInt.empty();
+        Node current = root;
+        while (current.left != null) current = current.left;
+        return OptionalInt.of(current.key);
+    }
+    public OptionalInt max() {
+        if (root==null) return OptionalInt.empty();
+        Node current = root;
+        while (current.right != null) current = current.right;
+        return OptionalInt.of(current.key);
+    }
+
+    // in ascending order
+    public void forEach(IntConsumer cf) {
+        if (cf != null) map_inorder(root,cf);
+    }
+    public void map_inorder(IntConsumer cf) { forEach(cf); }
+    static void map_inorder(Node t, IntConsumer cf) {
+        while (t != null) {
+            map_inorder(t.left,cf);
+            cf.accept(t.key);
+            t = t.right;
+        }
+    }
+
+    public PrimitiveIterator.OfInt iterator() { return new IntIterator(); }
+    public IntStream stream() {
+        var sp = Spliterators.spliterator(iterator(), size,
+                   Spliterator.SORTED | Spliterator.DISTINCT |
+                   Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.intStream(sp,false);
+    }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder("[");
+        forEach(x -> sb.append(sb.length()>1 ? ", " : "").append(x));
+        return sb.append("]").toString();
+    }
+
+  //////////////////////////////// nested classes //////////////////
+
+  // static: no pointer back to the set
+  static final class Node
+  {
+    int key;
+    Node left, right;
+    int height = 1;  // height of this subtree
+
+    Node(int k) { key = k; }
+
+    int set_height() {  // sets height, returns balance factor
+        int ldepth = depth(left);
+        int rdepth = depth(right);
+        height = 1 + Math.max(ldepth,rdepth);
+        return rdepth - ldepth;
+    }
+
+    void adjust() {
+        int bf = set_height();
+        if (bf < -1) {
+            if (depth(left.left) >= depth(left.right)) LL();
+            else LR();
+        }
+        else if (bf > 1) {
+            if (depth(right.right) >= depth(right.left)) RR();
+            else RL();
+        }
+    }
+
+    // as in AVLSet, `this` stays the root of the subtree
+    void LL() {
+        var lnode = left;
+        int tmp = key;
+        key = lnode.key;
+        lnode.key = tmp;
+        left = lnode.left;
+        lnode.left = lnode.right;
+        lnode.right = right;
+        right = lnode;
+        lnode.set_height();
+        set_height();
+    }
+    void RR() {
+        var rnode = right;
+        int tmp = key;
+        key = rnode.key;
+        rnode.key = tmp;
+        right = rnode.right;
+        rnode.right = rnode.left;
+        rnode.left = left;
+        left = rnode;
+        rnode.set_height();
+        set_height();
+    }
+    void LR() { left.RR(); LL(); }
+    void RL() { right.LL(); RR(); }
+
+    @Override
+    public String toString() { return key+""; }
+  }//Node
+
+  // in-order walk with an explicit stack, like AVLIterator (not fail-fast)
+  class IntIterator implements PrimitiveIterator.OfInt
+  {
+    final Node[] stack = new Node[depth(root)];
+    int top = 0;
+    IntIterator() { push_left(root); }
+    void push_left(Node t) {
+        while (t != null) {
+            stack[top++] = t;
+            t = t.left;
+        }
+    }
+    public boolean hasNext() { return top > 0; }
+    public int nextInt() {
+        if (top==0) throw new NoSuchElementException();
+        var n = stack[--top];
+        stack[top] = null;
+        push_left(n.right);
+        return n.key;
+    }
+  }//IntIterator
+
+}//IntAVLSet
@@ -0,0 +1,22 @@
+package avltree;
+
+/* The half-open range [start,end) of longs, as stored in IntervalAVLSet.
+   Intervals are ordered by start, then by end.
+*/
+public record Interval(long start, long end) implements Comparable<Interval>
+{
+    public Interval {
+        if (start > end) throw new IllegalArgumentException("interval ends before it starts");
+    }
+
+    public boolean contains(long point) { return start <= point && point < end; }
+    public boolean overlaps(long lo, long hi) { return start < hi && lo < end; }
+
+    public int compareTo(Interval other) {
+        int c = Long.compare(start,other.start);
+        return (c!=0) ? c : Long.compare(end,other.end);
+    }
+
+    @Override
+    public String toString() { return "["+start+","+end+")"; }
+}
@@ -0,0 +1,119 @@
+/* Interval tree: an AVLSet of Intervals, ordered by start, in which each
+   node also records the largest end in its subtree (max_end).
+
+   max_end is recomputed in the augment hook of set_height, so LL, RR, LR,
+   RL, insert, remove and join keep it right.  With it, a search for the
+   intervals overlapping [lo,hi) can skip every subtree whose max_end is
+   <= lo (nothing in it reaches lo), and can stop at the first interval
+   that starts at or after hi, since the rest start later still.
+
+   overlapping() returns a lazy stream: an in-order walk with an explicit
+   stack, like AVLIterator, that only descends into subtrees that can
+   still hold an overlapping interval.  Each interval found costs at most
+   one root-to-leaf path, so k results take O((k+1) log n) time at worst
+   and usually much closer to O(log n + k).
+*/
+
+package avltree;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.NoSuchElementException;
+import java.util.ConcurrentModificationException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class IntervalAVLSet extends AVLSet<Interval>
+{
+    public IntervalAVLSet() { super(); }
+
+    public boolean insert(long start, long end) { return insert(new Interval(start,end)); }
+    public boolean remove(long start, long end) { return remove(new Interval(start,end)); }
+
+    @Override
+    AVLNode make_node(Interval x, Tree<Interval> left, Tree<Interval> right) {
+        return new IntervalNode(x,left,right);
+    }
+
+    long max_end(Tree<Interval> t) {
+        return t.is_empty() ? Long.MIN_VALUE : ((IntervalNode)t).max_end;
+    }
+
+    // the intervals containing point, in order
+    public Stream<Interval> overlapping(long point) {
+        return search_overlaps(point,point);
+    }
+    // the intervals that overlap [lo,hi), in order
+    public Stream<Interval> overlapping(long lo, long hi) {
+        if (lo >= hi) return Stream.empty();
+        return search_overlaps(lo,hi-1);
+    }
+    // intervals with end > after and start <= last_start
+    Stream<Interval> search_overlaps(long after, long last_start) {
+        var sp = Spliterators.spliteratorUnknownSize(new OverlapIterator(after,last_start),
+                   Spliterator.SORTED | Spliterator.DISTINCT |
+                   Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(sp,false);
+    }
+
+  //////////////////////////////// inner classes //////////////////
+
+  class IntervalNode extends AVLNode
+  {
+    long max_end;  // largest end in this subtree; set by set_height
+
+    IntervalNode(Interval i, Tree<Interval> lf, Tree<Interval> rt) { super(i,lf,rt); }
+
+    @Override
+    void augment() {
+        max_end = Math.max(item.end(), Math.max(max_end(left),max_end(right)));
+    }
+  }//IntervalNode
+
+  class OverlapIterator implements Iterator<Interval>
+  {
+    final long after, last_start;
+    final Object[] stack = new Object[root.depth()];
+    int top = 0;
+    final int expected_mod = modcount;
+    Interval next = null;  // the next interval to return, once found
+
+    OverlapIterator(long after, long last_start) {
+        this.after = after;
+        this.last_start = last_start;
+        push_left(root);
+    }
+
+    // like AVLIterator.push_left, but leaves out subtrees ending too soon
+    void push_left(Tree<Interval> t) {
+        while (max_end(t) > after) {
+            var n = (IntervalNode)t;
+            stack[top++] = n;
+            t = n.left;
+        }
+    }
+
+    public boolean hasNext() {
+        if (modcount != expected_mod) throw new ConcurrentModificationException();
+        while (next==null && top > 0) {
+            var n = (IntervalNode)stack[--top];
+            stack[top] = null;
+            if (n.item.start() > last_start) {  // so does everything after it
+                top = 0;
+                break;
+            }
+            push_left(n.right);
+            if (n.item.end() > after) next = n.item;
+        }
+        return next != null;
+    }
+
+    public Interval next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        var x = next;
+        next = null;
+        return x;
+    }
+  }//OverlapIterator
+
+}//IntervalAVLSet
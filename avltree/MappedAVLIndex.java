@@ -0,0 +1,399 @@
+/* Off-heap AVL index from long keys to long values, kept in a
+   memory-mapped file.
+
+   The nodes are fixed-size records in the file itself, laid out like the
+   arrays of PooledAVLSet: node i is the 32 bytes at HEADER + i*NODE_SIZE,
+
+       key (8)  value (8)  left (4)  right (4)  height (4)  unused (4)
+
+   where left and right are node numbers and node 0 is the empty tree
+   (all zeros, so its height is 0).  Nothing of the tree is on the heap,
+   so the index can be larger than the heap, and opening an existing file
+   only reads the header: O(1), no deserialization, no re-inserting.
+
+   The file is mapped in chunks of 2^chunk_bits bytes, 64MB by default (a
+   MappedByteBuffer can't exceed 2GB), each mapped when first touched.  The chunk size is a
+   multiple of NODE_SIZE, so a node never straddles two chunks.  Mapping a
+   chunk past the end of the file extends the file.
+
+   Changes go to the mapped pages directly and the OS writes them back
+   whenever it likes.  force() flushes them to the device: after force()
+   returns, everything done so far survives a crash.  A crash between two
+   force() calls may leave the file with some pages old and some new,
+   so the tree may then be inconsistent.  This is not a write-ahead log,
+   but such a file is recognized: the first change after a force() sets a
+   dirty flag in the header and forces the header out before any node is
+   touched, and force() clears the flag again once everything else is on
+   the device.  open refuses a file whose flag is set.  The header fields
+   of an existing file are checked against the file size before use.
+
+   The balancing is the same as in AVLNode: adjust() followed by LL, RR,
+   LR or RL, and rotations swap keys (and values) so that a node stays at
+   the root of its subtree.  Removed nodes go on a free list, chained
+   through their left field, and are reused.
+
+   (java.lang.foreign.MemorySegment would avoid the chunking, but it is
+   still an incubator API in Java 17.)
+
+   Not thread-safe.
+*/
+
+package avltree;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.OptionalLong;
+import java.util.function.LongConsumer;
+
+public class MappedAVLIndex implements AutoCloseable
+{
+    static final long MAGIC = 0x41564c4944583031L;  // "AVLIDX01"
+    static final int NIL = 0;
+
+    // header layout
+    static final int HEADER = 64;
+    static final int H_MAGIC = 0, H_CHUNK_BITS = 8, H_ROOT = 12, H_SIZE = 16,
+                     H_NEXT_SLOT = 24, H_FREE = 32, H_DIRTY = 36;
+
+    // node layout
+    static final int NODE_SIZE = 32;
+    static final int KEY = 0, VALUE = 8, LEFT = 16, RIGHT = 20, HEIGHT = 24;
+
+    static final int DEFAULT_CHUNK_BITS = 26;  // 64MB chunks
+
+    final FileChannel channel;
+    final int chunk_bits;
+    final long chunk_mask;
+    final ArrayList<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+
+    // cached copies of the header fields, written back by write_header
+    int root;
+    long size;
+    long next_slot;
+    int free;
+    boolean dirty;  // changed since the last force()
+
+    MappedAVLIndex(FileChannel channel, int chunk_bits) {
+        this.channel = channel;
+        this.chunk_bits = chunk_bits;
+        this.chunk_mask = (1L << chunk_bits) - 1;
+    }
+
+    // opens the index in file, creating an empty one if the file is empty
+    public static MappedAVLIndex open(Path file) throws IOException {
+        return open(file, DEFAULT_CHUNK_BITS);
+    }
+    // chunk_bits only matters when a new file is created; an existing
+    // file keeps the chunk size it was created with
+    public static MappedAVLIndex open(Path file, int chunk_bits) throws IOException {
+        if (chunk_bits < 12 || chunk_bits > 30)
+            throw new IllegalArgumentException("chunk_bits must be in 12..30");
+        var channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                         StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size()==0) {
+                var index = new MappedAVLIndex(channel, chunk_bits);
+                index.root = NIL;
+                index.size = 0;
+                index.next_slot = 1;
+                index.free = NIL;
+                index.chunk(0).putLong(H_MAGIC, MAGIC).putInt(H_CHUNK_BITS, chunk_bits);
+                index.write_header();
+                index.dirty = true;
+                index.force();
+                return index;
+            }
+            if (channel.size() < HEADER)
+                throw new IOException(file + " is not an AVL index");
+            var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER)
+                                .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong(H_MAGIC) != MAGIC)
+                throw new IOException(file + " is not an AVL index");
+            if (header.getInt(H_DIRTY) != 0)
+                throw new IOException(file + " was changed after its last force() and may be torn");
+            int bits = header.getInt(H_CHUNK_BITS);
+            int root = header.getInt(H_ROOT);
+            long size = header.getLong(H_SIZE);
+            long next_slot = header.getLong(H_NEXT_SLOT);
+            int free = header.getInt(H_FREE);
+            // all nodes in use lie within the file, which grows a chunk at a time
+            if (bits < 12 || bits > 30
+                || next_slot < 1 || next_slot > (long)Integer.MAX_VALUE + 1
+                || offset(next_slot) > channel.size()
+                || root < 0 || root >= next_slot || free < 0 || free >= next_slot
+                || size < 0 || size >= next_slot || (size==0) != (root==NIL))
+                throw new IOException(file + " has a corrupt header");
+            var index = new MappedAVLIndex(channel, bits);
+            index.root = root;
+            index.size = size;
+            index.next_slot = next_slot;
+            index.free = free;
+            return index;
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // writes all changes so far to the device, then marks the file clean
+    public void force() {
+        if (!dirty) return;
+        for (var chunk : chunks) if (chunk != null) chunk.force();
+        var header = chunk(0);
+        header.putInt(H_DIRTY, 0);
+        header.force(0, HEADER);
+        dirty = false;
+    }
+
+    // called before each change: the flag must be on the device before
+    // any node is, or a crash could leave a torn tree marked clean
+    void mark_dirty() {
+        if (dirty) return;
+        var header = chunk(0);
+        header.putInt(H_DIRTY, 1);
+        header.force(0, HEADER);
+        dirty = true;
+    }
+
+    // the mapped buffers are unmapped when they are garbage collected
+    public void close() throws IOException {
+        force();
+        chunks.clear();
+        channel.close();
+    }
+
+    ///// raw access
+
+    MappedByteBuffer chunk(int c) {
+        while (chunks.size() <= c) chunks.add(null);
+        var chunk = chunks.get(c);
+        if (chunk==null) {
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE,
+                                    (long)c << chunk_bits, 1L << chunk_bits);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            chunks.set(c, chunk);
+        }
+        return chunk;
+    }
+
+    void write_header() {
+        chunk(0).putInt(H_ROOT, root)
+                .putLong(H_SIZE, size)
+                .putLong(H_NEXT_SLOT, next_slot)
+                .putInt(H_FREE, free);
+    }
+
+    static long offset(long i) { return HEADER + i * NODE_SIZE; }
+    MappedByteBuffer chunk_of(int i) { return chunk((int)(offset(i) >>> chunk_bits)); }
+    int position(int i, int field) { return (int)(offset(i) & chunk_mask) + field; }
+
+    long key(int i) { return chunk_of(i).getLong(position(i,KEY)); }
+    long value(int i) { return chunk_of(i).getLong(position(i,VALUE)); }
+    int left(int i) { return chunk_of(i).getInt(position(i,LEFT)); }
+    int right(int i) { return chunk_of(i).getInt(position(i,RIGHT)); }
+    int height(int i) { return i==NIL ? 0 : chunk_of(i).getInt(position(i,HEIGHT)); }
+
+    void set_key(int i, long k) { chunk_of(i).putLong(position(i,KEY), k); }
+    void set_value(int i, long v) { chunk_of(i).putLong(position(i,VALUE), v); }
+    void set_left(int i, int l) { chunk_of(i).putInt(position(i,LEFT), l); }
+    void set_right(int i, int r) { chunk_of(i).putInt(position(i,RIGHT), r); }
+    void store_height(int i, int h) { chunk_of(i).putInt(position(i,HEIGHT), h); }
+
+    int allocate(long k, long v) {
+        int i;
+        if (free != NIL) {
+            i = free;
+            free = left(i);
+        }
+        else {
+            if (next_slot > Integer.MAX_VALUE) throw new IllegalStateException("index full");
+            i = (int)next_slot++;
+        }
+        set_key(i,k);
+        set_value(i,v);
+        set_left(i,NIL);
+        set_right(i,NIL);
+        store_height(i,1);
+        return i;
+    }
+
+    void release(int i) {
+        set_right(i,NIL);
+        set_left(i,free);
+        free = i;
+    }
+
+    ///// index operations
+
+    public long size() { return size; }
+    public int depth() { return height(root); }
+    public boolean is_empty() { return size==0; }
+
+    // non-recursive
+    public OptionalLong get(long k) {
+        int current = root;
+        while (current != NIL) {
+            long ck = key(current);
+            if (k < ck) current = left(current);
+            else if (k > ck) current = right(current);
+            else return OptionalLong.of(value(current));
+        }
+        return OptionalLong.empty();
+    }
+    public boolean contains(long k) { return get(k).isPresent(); }
+
+    // returns false if k was already present (its value is then replaced)
+    public boolean put(long k, long v) {
+        mark_dirty();
+        long prev_size = size;
+        root = insert(root,k,v);
+        write_header();
+        return size != prev_size;
+    }
+    int insert(int t, long k, long v) {
+        if (t==NIL) {
+            size++;
+            return allocate(k,v);
+        }
+        long tk = key(t);
+        if (k < tk) set_left(t, insert(left(t),k,v));
+        else if (k > tk) set_right(t, insert(right(t),k,v));
+        else {
+            set_value(t,v);
+            return t;
+        }
+        adjust(t);
+        return t;
+    }//insert
+
+    // returns false if k wasn't present
+    public boolean remove(long k) {
+        mark_dirty();
+        long prev_size = size;
+        root = remove(root,k);
+        write_header();
+        return size != prev_size;
+    }
+    int remove(int t, long k) {
+        if (t==NIL) return NIL;
+        long tk = key(t);
+        if (k < tk) set_left(t, remove(left(t),k));
+        else if (k > tk) set_right(t, remove(right(t),k));
+        else { // found it
+            size--;
+            if (left(t)==NIL) {
+                int r = right(t);
+                release(t);
+                return r;
+            }
+            set_left(t, delete_max(left(t),t));
+        }
+        adjust(t);
+        return t;
+    }//remove
+
+    int delete_max(int t, int to_modify) {
+        if (right(t)==NIL) {
+            set_key(to_modify, key(t));
+            set_value(to_modify, value(t));
+            int l = left(t);
+            release(t);
+            return l;
+        }
+        set_right(t, delete_max(right(t),to_modify));
+        adjust(t);
+        return t;
+    }//delete_max
+
+    public OptionalLong min() {
+        if (root==NIL) return OptionalLong.empty();
+        int current = root;
+        while (left(current) != NIL) current = left(current);
+        return OptionalLong.of(key(current));
+    }
+    public OptionalLong max() {
+        if (root==NIL) return OptionalLong.empty();
+        int current = root;
+        while (right(current) != NIL) current = right(current);
+        return OptionalLong.of(key(current));
+    }
+
+    // keys in ascending order
+    public void forEach(LongConsumer cf) {
+        if (cf != null) map_inorder(root,cf);
+    }
+    void map_inorder(int t, LongConsumer cf) {
+        while (t != NIL) {
+            map_inorder(left(t),cf);
+            cf.accept(key(t));
+            t = right(t);
+        }
+    }
+
+    ///// balancing, as in AVLNode
+
+    int set_height(int t) {  // sets height, returns balance factor
+        int ldepth = height(left(t));
+        int rdepth = height(right(t));
+        store_height(t, 1 + Math.max(ldepth,rdepth));
+        return rdepth - ldepth;
+    }
+
+    void adjust(int t) {
+        int bf = set_height(t);
+        if (bf < -1) {
+            int l = left(t);
+            if (height(left(l)) >= height(right(l))) LL(t);
+            else LR(t);
+        }
+        else if (bf > 1) {
+            int r = right(t);
+            if (height(right(r)) >= height(left(r))) RR(t);
+            else RL(t);
+        }
+    }
+
+    // exchanges the key and value of nodes a and b
+    void swap_items(int a, int b) {
+        long k = key(a), v = value(a);
+        set_key(a, key(b));
+        set_value(a, value(b));
+        set_key(b, k);
+        set_value(b, v);
+    }
+
+    void LL(int t) {
+        int l = left(t);
+        swap_items(t,l);
+        set_left(t, left(l));
+        set_left(l, right(l));
+        set_right(l, right(t));
+        set_right(t, l);
+        set_height(l);
+        set_height(t);
+    }
+    void RR(int t) {
+        int r = right(t);
+        swap_items(t,r);
+        set_right(t, right(r));
+        set_right(r, left(r));
+        set_left(r, left(t));
+        set_left(t, r);
+        set_height(r);
+        set_height(t);
+    }
+    void LR(int t) { RR(left(t)); LL(t); }
+    void RL(int t) { LL(right(t)); RR(t); }
+
+}//MappedAVLIndex
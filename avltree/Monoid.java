@@ -0,0 +1,24 @@
+package avltree;
+import java.util.function.*;
+
+/* A summary of a sequence of items, for AugmentedAVLSet: lift turns one
+   item into a summary, and combine joins the summaries of two adjacent
+   runs of items, in order.  combine must be associative with identity as
+   its neutral element, but needn't be commutative.  Examples: sums
+   (0, +, the item's weight), maxima, counts, first and last item.
+*/
+public interface Monoid<T,A>
+{
+    A identity();
+    A combine(A left, A right);
+    A lift(T item);
+
+    static <T,A> Monoid<T,A> of(A identity, BinaryOperator<A> combine,
+                                Function<? super T,? extends A> lift) {
+        return new Monoid<T,A>() {
+            public A identity() { return identity; }
+            public A combine(A left, A right) { return combine.apply(left,right); }
+            public A lift(T item) { return lift.apply(item); }
+        };
+    }
+}
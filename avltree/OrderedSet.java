@@ -0,0 +1,51 @@
+package avltree;
+import java.util.Iterator;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/* The operations every set in this package supports, whatever its node
+   representation: AVLSet, PersistentAVLSet, ConcurrentAVLSet and
+   PooledAVLSet.  Code written against OrderedSet can switch between them.
+*/
+public interface OrderedSet<T> extends Iterable<T>
+{
+    int size();
+    int depth();  // height of the tree, 0 if empty
+    default boolean is_empty() { return size()==0; }
+    boolean contains(T x);
+    default boolean search(T x) { return contains(x); }
+    boolean insert(T x);  // returns false if x was already present
+    boolean remove(T x);  // returns false if x wasn't present
+    Optional<T> min();
+    Optional<T> max();
+    void map_inorder(Consumer<? super T> cf);  // in ascending order
+    Stream<T> stream();
+
+    /* A sorted stream over the size items of an in-order iterator, for
+       sets without a spliterator of their own.  Spliterators.spliterator
+       reports SORTED with a null comparator, which tells sorted() the
+       items are in natural order even when the set has its own cmp.
+    */
+    static <T> Stream<T> sorted_stream(Iterator<T> it, long size,
+                                       Comparator<? super T> cmp, int characteristics) {
+        var sp = new Spliterators.AbstractSpliterator<T>(size, characteristics |
+                       Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.ORDERED |
+                       Spliterator.NONNULL | Spliterator.SIZED) {
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (!it.hasNext()) return false;
+                action.accept(it.next());
+                return true;
+            }
+            @Override
+            public void forEachRemaining(Consumer<? super T> action) { it.forEachRemaining(action); }
+            @Override
+            public Comparator<? super T> getComparator() { return cmp; }
+        };
+        return StreamSupport.stream(sp,false);
+    }
+}
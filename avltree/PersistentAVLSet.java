@@ -0,0 +1,303 @@
+/* Persistent (immutable, path-copying) AVL set.
+
+   The nodes of AVLSet are updated in place: insert and remove reassign
+   left, right, item and height as they go, so a reader walking the tree
+   at the same time can see it half-rotated.  Here nodes never change
+   once built.  Inserting or removing x copies only the nodes on the path
+   from the root to x (O(log n) of them), rebalancing the copies, and
+   shares every other subtree with the previous version.  The old root
+   still describes the old set, intact.
+
+   So a snapshot is just a reference to the current root: snapshot()
+   is O(1), and the snapshot stays valid no matter what the writer does
+   afterwards.  Readers need no locks and never see a partial update.
+   The root is swapped with a compare-and-set, so several writers may also
+   update the same set without locking (a writer that loses the race
+   simply redoes its path copy).
+
+   The nodes implement the same Tree<T> interface as the mutable ones,
+   except that insert and remove return a new root instead of modifying
+   the tree.
+*/
+
+package avltree;
+import java.util.Iterator;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.*;
+import java.util.stream.Stream;
+
+public class PersistentAVLSet<T extends Comparable<? super T>>
+implements OrderedSet<T>
+{
+    final Tree<T> Empty = new PNil();
+    final AtomicReference<Tree<T>> root;
+    Comparator<T> cmp = (x,y) -> x.compareTo(y);
+
+    public PersistentAVLSet() { root = new AtomicReference<Tree<T>>(Empty); }
+    public PersistentAVLSet(Comparator<T> cmp) {
+        this();
+        if (cmp!=null) this.cmp = cmp;
+    }
+    // shares the given version
+    PersistentAVLSet(Comparator<T> cmp, Tree<T> version) {
+        this.cmp = cmp;
+        root = new AtomicReference<Tree<T>>(version);
+    }
+
+    ///// wrapper class methods
+
+    // O(1): a new set that starts out as this version and evolves separately
+    public PersistentAVLSet<T> snapshot() {
+        return new PersistentAVLSet<T>(cmp, root.get());
+    }
+
+    public int size() { return count(root.get()); }
+    public int depth() { return root.get().depth(); }
+    public boolean is_empty() { return root.get().is_empty(); }
+
+    public boolean insert(T x) {
+        if (x==null) return false;
+        Tree<T> current, next;
+        do {
+            current = root.get();
+            next = current.insert(x);
+            if (next==current) return false;  // already there
+        } while (!root.compareAndSet(current,next));
+        return true;
+    }
+
+    public boolean remove(T x) {
+        if (x==null) return false;
+        Tree<T> current, next;
+        do {
+            current = root.get();
+            next = current.remove(x);
+            if (next==current) return false;  // wasn't there
+        } while (!root.compareAndSet(current,next));
+        return true;
+    }
+
+    // non-recursive, like AVLSet.search
+    public boolean contains(T x) {
+        if (x==null) return false;
+        Tree<T> current = root.get();
+        while (!current.is_empty()) {
+            var current_node = (PNode)current;
+            int c = cmp.compare(x, current_node.item);
+            if (c==0) return true;
+            else if (c<0) current = current_node.left;
+            else current = current_node.right;
+        }
+        return false;
+    }
+    public boolean search(T x) { return contains(x); }
+
+    public Optional<T> min() { return root.get().min(); }
+    public Optional<T> max() { return root.get().max(); }
+    public void map_inorder(Consumer<? super T> cf) {
+        if (cf != null) root.get().map_inorder(cf);
+    }
+
+    // iterators and streams read the version that is current when created
+    public Iterator<T> iterator() { return new PIterator(root.get()); }
+    public Stream<T> stream() {
+        Tree<T> version = root.get();
+        return OrderedSet.sorted_stream(new PIterator(version), count(version),
+                                        cmp, Spliterator.IMMUTABLE);
+    }
+
+    int count(Tree<T> t) { return t.is_empty() ? 0 : ((PNode)t).count; }
+
+    ///// rebalancing: builds a balanced node for (l, x, r), where l and r
+    ///// differ in height by at most 2, using the usual four rotations.
+
+    Tree<T> balance(T x, Tree<T> l, Tree<T> r) {
+        int hl = l.depth(), hr = r.depth();
+        if (hl > hr+1) {
+            var ln = (PNode)l;
+            if (ln.left.depth() >= ln.right.depth()) return LL(x,ln,r);
+            else return LR(x,ln,r);
+        }
+        if (hr > hl+1) {
+            var rn = (PNode)r;
+            if (rn.right.depth() >= rn.left.depth()) return RR(x,l,rn);
+            else return RL(x,l,rn);
+        }
+        return new PNode(x,l,r);
+    }
+
+    Tree<T> LL(T x, PNode ln, Tree<T> r) {
+        return new PNode(ln.item, ln.left, new PNode(x,ln.right,r));
+    }
+    Tree<T> RR(T x, Tree<T> l, PNode rn) {
+        return new PNode(rn.item, new PNode(x,l,rn.left), rn.right);
+    }
+    Tree<T> LR(T x, PNode ln, Tree<T> r) {
+        var lr = (PNode)ln.right;
+        return new PNode(lr.item, new PNode(ln.item,ln.left,lr.left),
+                                  new PNode(x,lr.right,r));
+    }
+    Tree<T> RL(T x, Tree<T> l, PNode rn) {
+        var rl = (PNode)rn.left;
+        return new PNode(rl.item, new PNode(x,l,rl.left),
+                                  new PNode(rn.item,rl.right,rn.right));
+    }
+
+  //////////////////////////////// inner classes //////////////////
+
+  class PNil implements Tree<T>
+  {
+    public boolean is_empty() { return true; }
+    public int depth() { return 0; }
+    public boolean contains(T x) { return false; }
+    public Tree<T> insert(T x) { return new PNode(x,Empty,Empty); }
+    public Tree<T> remove(T x) { return this; }
+    public Optional<T> min() { return Optional.empty(); }
+    public Optional<T> max() { return Optional.empty(); }
+    public void map_inorder(Consumer<? super T> cf) {}
+    public void ifPresent(Consumer<? super T> cf) {}
+    public <U> U match(Function<? super T,? extends U> fn,
+                       Supplier<? extends U> fe)  {
+      return fe.get();
+    }
+    public Tree<T> clone() { return this; }  // immutable, nothing to copy
+    public Tree<T> successor(T x, Tree<T> ancestor) { return ancestor; }
+    public Tree<T> predecessor(T x, Tree<T> ancestor) { return ancestor; }
+    @Override
+    public String toString() { return ""; }
+  }//PNil
+
+  class PNode implements Tree<T>
+  {
+    final T item;
+    final Tree<T> left, right;
+    final int height;  // height of this subtree
+    final int count;   // number of nodes in this subtree
+
+    PNode(T i, Tree<T> lf, Tree<T> rt) {
+        item = i;  left = lf;  right = rt;
+        height = 1 + Math.max(lf.depth(), rt.depth());
+        count = 1 + count(lf) + count(rt);
+    }
+
+    public boolean is_empty() { return false; }
+    public int depth() { return height; }
+    public boolean contains(T x) {
+        int c = cmp.compare(x,item);
+        return (c==0) || (c<0 && left.contains(x)) || (c>0 && right.contains(x));
+    }
+
+    // returns this if x is already present, else a new root
+    public Tree<T> insert(T x) {
+        int c = cmp.compare(x,item);
+        if (c<0) {
+            var new_left = left.insert(x);
+            return (new_left==left) ? this : balance(item,new_left,right);
+        }
+        else if (c>0) {
+            var new_right = right.insert(x);
+            return (new_right==right) ? this : balance(item,left,new_right);
+        }
+        else return this;
+    }//insert
+
+    // returns this if x isn't present, else a new root
+    public Tree<T> remove(T x) {
+        int c = cmp.compare(x,item);
+        if (c<0) {
+            var new_left = left.remove(x);
+            return (new_left==left) ? this : balance(item,new_left,right);
+        }
+        else if (c>0) {
+            var new_right = right.remove(x);
+            return (new_right==right) ? this : balance(item,left,new_right);
+        }
+        if (left.is_empty()) return right;
+        if (right.is_empty()) return left;
+        // replace by the largest item on the left
+        var lnode = (PNode)left;
+        return balance(lnode.max_item(), lnode.delete_max(), right);
+    }//remove
+
+    T max_item() {
+        PNode current = this;
+        while (!current.right.is_empty()) current = (PNode)current.right;
+        return current.item;
+    }
+    Tree<T> delete_max() {
+        if (right.is_empty()) return left;
+        return balance(item, left, ((PNode)right).delete_max());
+    }
+
+    public Optional<T> min() {
+        if (left.is_empty()) return Optional.of(item);
+        else return left.min();
+    }
+    public Optional<T> max() { return Optional.of(max_item()); }
+    public void map_inorder(Consumer<? super T> cf) {
+        left.map_inorder(cf);
+        cf.accept(item);
+        right.map_inorder(cf);
+    }
+    public void ifPresent(Consumer<? super T> cf) { cf.accept(item); }
+    public <U> U match(Function<? super T,? extends U> fn,
+                       Supplier<? extends U> fe)  {
+        return fn.apply(item);
+    }
+    public Tree<T> clone() { return this; }
+
+    public Tree<T> successor(T x, Tree<T> ancestor) {
+        int c = cmp.compare(x,item);
+        if (c<0) return left.successor(x,this);
+        if (c>0) return right.successor(x,ancestor);
+        if (right.is_empty()) return ancestor;
+        Tree<T> current = right;
+        while (!((PNode)current).left.is_empty()) current = ((PNode)current).left;
+        return current;
+    }
+    public Tree<T> predecessor(T x, Tree<T> ancestor) {
+        int c = cmp.compare(x,item);
+        if (c>0) return right.predecessor(x,this);
+        if (c<0) return left.predecessor(x,ancestor);
+        if (left.is_empty()) return ancestor;
+        Tree<T> current = left;
+        while (!((PNode)current).right.is_empty()) current = ((PNode)current).right;
+        return current;
+    }
+
+    @Override
+    public String toString() { return item+""; }
+  }//PNode
+
+  // in-order walk over one version, with an explicit stack like AVLIterator
+  @SuppressWarnings("unchecked")
+  class PIterator implements Iterator<T>
+  {
+    final Object[] stack;
+    int top = 0;
+    PIterator(Tree<T> version) {
+        stack = new Object[version.depth()];
+        push_left(version);
+    }
+    void push_left(Tree<T> t) {
+        while (!t.is_empty()) {
+            var n = (PNode)t;
+            stack[top++] = n;
+            t = n.left;
+        }
+    }
+    public boolean hasNext() { return top > 0; }
+    public T next() {
+        if (top==0) throw new NoSuchElementException();
+        var n = (PNode)stack[--top];
+        stack[top] = null;
+        push_left(n.right);
+        return n.item;
+    }
+  }//PIterator
+
+}//PersistentAVLSet
@@ -0,0 +1,288 @@
+/* AVL set whose nodes live in parallel arrays instead of objects.
+
+   Node i is the slot i of the arrays keys, left, right and height:
+   children are int indices, not references.  A lookup walks a few
+   primitive arrays instead of chasing pointers between objects scattered
+   over the heap, and the garbage collector sees four arrays, not one
+   object per node.  (The keys themselves are still objects, unless they
+   are constants or interned; for long keys see LongAVLSet.)
+
+   Slot 0 is the empty tree, with height 0, so a child index of 0 means
+   "no child" and depth() needs no test for it.  Slots freed by remove are
+   chained into a free list through the left array and reused by the next
+   insert; when no slot is free the arrays double in size.
+
+   The balancing is the same as in AVLSet: adjust() followed by LL, RR,
+   LR or RL, and the rotations swap keys so that a node stays at the root
+   of its subtree (the parent's index for it doesn't change).
+*/
+
+package avltree;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.NoSuchElementException;
+import java.util.ConcurrentModificationException;
+import java.util.function.*;
+import java.util.stream.Stream;
+
+public class PooledAVLSet<T extends Comparable<? super T>>
+implements OrderedSet<T>
+{
+    static final int NIL = 0;
+
+    Object[] keys;
+    int[] left, right, height;
+    int root = NIL;
+    int size = 0;
+    int next_slot = 1;  // slots below this have been handed out at least once
+    int free = NIL;     // head of the free list, chained through left[]
+    int modcount = 0;
+    Comparator<T> cmp = (x,y) -> x.compareTo(y);
+
+    public PooledAVLSet() { this(16); }
+    public PooledAVLSet(int capacity) {
+        int n = Math.max(capacity,1) + 1;  // one more for slot 0
+        keys = new Object[n];
+        left = new int[n];
+        right = new int[n];
+        height = new int[n];
+    }
+    public PooledAVLSet(Comparator<T> cmp) {
+        this();
+        if (cmp!=null) this.cmp = cmp;
+    }
+
+    @SuppressWarnings("unchecked")
+    T key(int i) { return (T)keys[i]; }
+
+    ///// slot management
+
+    int allocate(T x) {
+        int i;
+        if (free != NIL) {
+            i = free;
+            free = left[i];
+        }
+        else {
+            if (next_slot == keys.length) grow();
+            i = next_slot++;
+        }
+        keys[i] = x;
+        left[i] = NIL;
+        right[i] = NIL;
+        height[i] = 1;
+        return i;
+    }
+
+    void release(int i) {
+        keys[i] = null;  // don't keep the item alive
+        right[i] = NIL;
+        left[i] = free;
+        free = i;
+    }
+
+    void grow() {
+        int n = keys.length * 2;
+        keys = Arrays.copyOf(keys,n);
+        left = Arrays.copyOf(left,n);
+        right = Arrays.copyOf(right,n);
+        height = Arrays.copyOf(height,n);
+    }
+
+    ///// set operations
+
+    public int size() { return size; }
+    public int depth() { return height[root]; }
+    public boolean is_empty() { return size==0; }
+
+    // non-recursive
+    public boolean contains(T x) {
+        if (x==null) return false;
+        int current = root;
+        while (current != NIL) {
+            int c = cmp.compare(x, key(current));
+            if (c==0) return true;
+            else if (c<0) current = left[current];
+            else current = right[current];
+        }
+        return false;
+    }
+
+    public boolean insert(T x) {
+        if (x==null) return false;
+        int prev_size = size;
+        root = insert(root,x);
+        return size != prev_size;
+    }
+    int insert(int t, T x) {
+        if (t==NIL) {
+            size++;
+            modcount++;
+            return allocate(x);
+        }
+        int c = cmp.compare(x, key(t));
+        if (c<0) {
+            int l = insert(left[t],x);  // may grow the arrays: assign after
+            left[t] = l;
+        }
+        else if (c>0) {
+            int r = insert(right[t],x);
+            right[t] = r;
+        }
+        else return t;
+        adjust(t);
+        return t;
+    }//insert
+
+    public boolean remove(T x) {
+        if (x==null) return false;
+        int prev_size = size;
+        root = remove(root,x);
+        return size != prev_size;
+    }
+    int remove(int t, T x) {
+        if (t==NIL) return NIL;
+        int c = cmp.compare(x, key(t));
+        if (c<0) left[t] = remove(left[t],x);
+        else if (c>0) right[t] = remove(right[t],x);
+        else { // found it
+            size--;
+            modcount++;
+            if (left[t]==NIL) {
+                int r = right[t];
+                release(t);
+                return r;
+            }
+            left[t] = delete_max(left[t],t);  // largest key on left moves to t
+        }
+        adjust(t);
+        return t;
+    }//remove
+
+    int delete_max(int t, int to_modify) {
+        if (right[t]==NIL) {
+            keys[to_modify] = keys[t];
+            int l = left[t];
+            release(t);
+            return l;
+        }
+        right[t] = delete_max(right[t],to_modify);
+        adjust(t);
+        return t;
+    }//delete_max
+
+    public Optional<T> min() {
+        if (root==NIL) return Optional.empty();
+        int current = root;
+        while (left[current] != NIL) current = left[current];
+        return Optional.of(key(current));
+    }
+    public Optional<T> max() {
+        if (root==NIL) return Optional.empty();
+        int current = root;
+        while (right[current] != NIL) current = right[current];
+        return Optional.of(key(current));
+    }
+
+    public void map_inorder(Consumer<? super T> cf) {
+        if (cf != null) map_inorder(root,cf);
+    }
+    void map_inorder(int t, Consumer<? super T> cf) {
+        while (t != NIL) {
+            map_inorder(left[t],cf);
+            cf.accept(key(t));
+            t = right[t];
+        }
+    }
+
+    public Iterator<T> iterator() { return new PooledIterator(); }
+    public Stream<T> stream() {
+        return OrderedSet.sorted_stream(iterator(),size,cmp,0);
+    }
+
+    ///// balancing, as in AVLNode
+
+    int set_height(int t) {  // sets height, returns balance factor
+        int ldepth = height[left[t]];
+        int rdepth = height[right[t]];
+        height[t] = 1 + Math.max(ldepth,rdepth);
+        return rdepth - ldepth;
+    }
+
+    void adjust(int t) {
+        int bf = set_height(t);
+        if (bf < -1) {
+            int l = left[t];
+            if (height[left[l]] >= height[right[l]]) LL(t);
+            else LR(t);
+        }
+        else if (bf > 1) {
+            int r = right[t];
+            if (height[right[r]] >= height[left[r]]) RR(t);
+            else RL(t);
+        }
+    }
+
+    void LL(int t) {
+        int l = left[t];
+        Object tmp = keys[t];
+        keys[t] = keys[l];
+        keys[l] = tmp;
+        left[t] = left[l];
+        left[l] = right[l];
+        right[l] = right[t];
+        right[t] = l;
+        set_height(l);
+        set_height(t);
+    }
+    void RR(int t) {
+        int r = right[t];
+        Object tmp = keys[t];
+        keys[t] = keys[r];
+        keys[r] = tmp;
+        right[t] = right[r];
+        right[r] = left[r];
+        left[r] = left[t];
+        left[t] = r;
+        set_height(r);
+        set_height(t);
+    }
+    void LR(int t) { RR(left[t]); LL(t); }
+    void RL(int t) { LL(right[t]); RR(t); }
+
+    @Override
+    public String toString() {
+        var sb = new StringBuilder("[");
+        map_inorder(x -> sb.append(sb.length()>1 ? ", " : "").append(x));
+        return sb.append("]").toString();
+    }
+
+  //////////////////////////////// inner classes //////////////////
+
+  // in-order walk with a stack of slot indices, fail-fast like AVLIterator
+  class PooledIterator implements Iterator<T>
+  {
+    final int[] stack = new int[height[root]];
+    int top = 0;
+    final int expected_mod = modcount;
+
+    PooledIterator() { push_left(root); }
+    void push_left(int t) {
+        while (t != NIL) {
+            stack[top++] = t;
+            t = left[t];
+        }
+    }
+    public boolean hasNext() { return top > 0; }
+    public T next() {
+        if (modcount != expected_mod) throw new ConcurrentModificationException();
+        if (top==0) throw new NoSuchElementException();
+        int n = stack[--top];
+        push_left(right[n]);
+        return key(n);
+    }
+  }//PooledIterator
+
+}//PooledAVLSet
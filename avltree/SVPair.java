@@ -0,0 +1,9 @@
+package avltree;
+
+/* A key and its value, as the streams and topK of StringTrie,
+   FrozenStringTrie and ConcurrentStringTrie return them.
+*/
+record SVPair<V>(String key, V val) {
+    @Override
+	public String toString() { return key+" : "+val; }
+}
@@ -49,20 +49,26 @@ descendants will have values.
 This program will make heavy use of both the Optional and Stream monads.
 */
 
+package avltree;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Optional;
 import java.util.HashSet;
 import java.util.TreeSet; // red-black tree, similar to AVL tree
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.function.*;
 
-record SVPair<V>(String key, V val) {
-    @Override
-	public String toString() { return key+" : "+val; }
-}
-
 //record rankedword(String word, int rank){}
 
 
@@ -71,39 +77,254 @@ public class StringTrie<VT> {
     // inner class for a Trie Node (but public)
     public class Node {
        	Optional<VT> item = Optional.empty();
-	HashMap<Character,Node> children = new HashMap<Character,Node>();
-	// could also use an array ..., hashmap is more memory efficient
+	VT best;  // highest ranked value in this subtree, while ranked (see topK)
+
+	/* The children are kept in one of four forms, as in the Adaptive
+	   Radix Tree, chosen by how many there are:
+
+	     none:    count 0, nothing allocated (the leaves)
+	     single:  count 1, the child in only and its char in label
+	     sorted:  the chars in sorted labels[], with the children at the
+	              same positions in kids[], scanned linearly while short
+	              and binary searched beyond that
+	     dense:   labels null, kids[c-label] is the child for char c, or
+	              null; the table spans from the smallest char used to
+	              the largest (it isn't narrowed when children go)
+
+	   A node goes dense once it has DENSE_FEWEST children whose chars
+	   are packed closely enough (a span of at most DENSE_FILL times the
+	   number of children, such as the ten digits), or more than
+	   DENSE_MIN children spanning at most DENSE_SPAN chars (such as
+	   ASCII letters).  Otherwise it stays sorted.  It changes form again
+	   as children are removed (as keys are removed).  Children
+	   are always visited in char order.
+	*/
+	Node only;
+	char label;
+	char[] labels;
+	Node[] kids;
+	int count;  // number of children
+
 	Node() {}
 	Node(VT x) {
 	    item = Optional.ofNullable(x); // will be empty if x is null
 	}
 
+	// the child for char c, or null
+	Node child(char c) {
+	    if (count==1) return (c==label) ? only : null;
+	    if (labels != null) {
+		if (count <= LINEAR_MAX) {
+		    for (int i=0;i<count;i++) if (labels[i]==c) return kids[i];
+		    return null;
+		}
+		int i = Arrays.binarySearch(labels,0,count,c);
+		return (i>=0) ? kids[i] : null;
+	    }
+	    if (kids != null) {
+		int i = c - label;
+		return (i>=0 && i<kids.length) ? kids[i] : null;
+	    }
+	    return null;
+	}//child
+
+	// the child for char c, made (and counted in nodes) if missing
+	Node child_or_add(char c) {
+	    Node n = child(c);
+	    if (n != null) return n;
+	    n = new Node();
+	    nodes++;
+	    add(c,n);
+	    return n;
+	}
+
+	// c must not have a child yet
+	void add(char c, Node n) {
+	    if (count==0) {
+		only = n;
+		label = c;
+	    }
+	    else if (count==1) {  // single to sorted
+		labels = new char[4];
+		kids = node_array(4);
+		boolean before = c < label;
+		labels[before?1:0] = label;  kids[before?1:0] = only;
+		labels[before?0:1] = c;      kids[before?0:1] = n;
+		only = null;
+	    }
+	    else {
+		int lo = 0, hi = 0;  // span of a dense node with c added
+		if (labels==null) {
+		    lo = Math.min(label,c);
+		    hi = Math.max(label+kids.length-1,c);
+		    if (!dense_fits(count+1,hi-lo+1)) to_sorted(2*count);
+		}
+		if (labels==null) {  // dense, widened to take c if need be
+		    if (lo != label || hi-lo+1 != kids.length) {
+			var table = node_array(hi-lo+1);
+			System.arraycopy(kids,0,table,label-lo,kids.length);
+			kids = table;
+			label = (char)lo;
+		    }
+		    kids[c-label] = n;
+		}
+		else if (to_dense(c)) kids[c-label] = n;
+		else {
+		    int i = -Arrays.binarySearch(labels,0,count,c) - 1;
+		    if (count==labels.length) {
+			labels = Arrays.copyOf(labels,2*count);
+			kids = Arrays.copyOf(kids,2*count);
+		    }
+		    System.arraycopy(labels,i,labels,i+1,count-i);
+		    System.arraycopy(kids,i,kids,i+1,count-i);
+		    labels[i] = c;
+		    kids[i] = n;
+		}
+	    }
+	    count++;
+	}//add
+
+	// switches a sorted node to dense, if its chars with c added are
+	// packed closely enough
+	boolean to_dense(char c) {
+	    char lo = (char)Math.min(labels[0],c);
+	    char hi = (char)Math.max(labels[count-1],c);
+	    if (!dense_fits(count+1,hi-lo+1)) return false;
+	    var table = node_array(hi-lo+1);
+	    for (int i=0;i<count;i++) table[labels[i]-lo] = kids[i];
+	    kids = table;
+	    labels = null;
+	    label = lo;
+	    return true;
+	}
+
+	// dense to sorted, with room for capacity children
+	void to_sorted(int capacity) {
+	    var new_labels = new char[capacity];
+	    var new_kids = node_array(capacity);
+	    int j = 0;
+	    for (int i=0;i<kids.length;i++)
+		if (kids[i] != null) {
+		    new_labels[j] = (char)(label+i);
+		    new_kids[j++] = kids[i];
+		}
+	    labels = new_labels;
+	    kids = new_kids;
+	}
+
+	// removes the child for c, if any, and shrinks the form to fit
+	void remove_child(char c) {
+	    if (child(c)==null) return;
+	    if (count==1) {
+		only = null;
+		count = 0;
+		return;
+	    }
+	    if (labels==null) {  // dense
+		kids[c-label] = null;
+		count--;
+		if (count < DENSE_FEWEST
+		    || (count < DENSE_MIN/2 && kids.length > 2*DENSE_FILL*count))
+		    to_sorted(DENSE_MIN);
+	    }
+	    else {
+		int i = Arrays.binarySearch(labels,0,count,c);
+		System.arraycopy(labels,i+1,labels,i,count-i-1);
+		System.arraycopy(kids,i+1,kids,i,count-i-1);
+		count--;
+		kids[count] = null;
+	    }
+	    if (count==1) {  // back to single
+		int i = 0;
+		while (kids[i]==null) i++;  // the only child
+		only = kids[i];
+		label = (labels != null) ? labels[i] : (char)(label+i);
+		labels = null;
+		kids = null;
+	    }
+	}//remove_child
+
+	/* The children by position, for visiting all of them in char order:
+	   for i < slots(), slot(i) is a child or, in a dense node, possibly
+	   null, and slot_label(i) is its char.
+	*/
+	int slots() {
+	    if (count<=1) return count;
+	    return (labels != null) ? count : kids.length;
+	}
+	Node slot(int i) { return (count==1) ? only : kids[i]; }
+	char slot_label(int i) {
+	    if (count==1) return label;
+	    return (labels != null) ? labels[i] : (char)(label+i);
+	}
+
 	void cleanup() {
-	    HashSet<Character> to_remove = new HashSet<Character>();
-	    for (var c : children.keySet()) {
-		Node child = children.get(c);
+	    char[] empty = null;  // chars of the children to drop
+	    int e = 0;
+	    for (int i=0;i<slots();i++) {
+		Node child = slot(i);
+		if (child==null) continue;
 		child.cleanup();
-		if (child.item.isEmpty() && child.children.size()==0) {
-		    //this.children.remove(c);
-		    to_remove.add(c);
-		    nodes--;
+		if (child.item.isEmpty() && child.count==0) {
+		    if (empty==null) empty = new char[count];
+		    empty[e++] = slot_label(i);
 		}
 	    }
-	    for (var c:to_remove) children.remove(c);
+	    for (int i=0;i<e;i++) {  // removing changes the slots
+		remove_child(empty[i]);
+		nodes--;
+	    }
 	}//cleanup
 
+	// recomputes best from item and the children's best
+	void rerank() {
+	    VT b = item.orElse(null);
+	    for (int i=0;i<slots();i++) {
+		Node child = slot(i);
+		if (child==null || child.best==null) continue;
+		if (b==null || ranked_by.compare(child.best,b) > 0) b = child.best;
+	    }
+	    best = b;
+	}
+	void rank_all() {
+	    for (int i=0;i<slots();i++) if (slot(i) != null) slot(i).rank_all();
+	    rerank();
+	}
+	void unrank_all() {
+	    for (int i=0;i<slots();i++) if (slot(i) != null) slot(i).unrank_all();
+	    best = null;
+	}
+
 	Stream<SVPair<VT>> stream(String prefix, int depth) {
 	    if (depth<1) return Stream.empty();
 	    return
 	    Stream.concat(item.stream()
 			  .map(i -> new SVPair<VT>(prefix,i)),
 			  
-   		          children.keySet().stream()
-			  .flatMap(c -> children.get(c)
-				        .stream(prefix+c,depth-1)));
+   		          IntStream.range(0,slots())
+			  .filter(i -> slot(i) != null)
+			  .boxed()
+			  .flatMap(i -> slot(i)
+				        .stream(prefix+slot_label(i),depth-1)));
 	}
     }// inner class Node
 
+    static final int LINEAR_MAX = 8;    // sorted nodes up to this are scanned
+    static final int DENSE_FEWEST = 4;  // no dense nodes with fewer children
+    static final int DENSE_FILL = 2;    // max span per child of a small dense node
+    static final int DENSE_MIN = 16;    // more children than this may span
+    static final int DENSE_SPAN = 256;  // at most this many chars
+
+    static boolean dense_fits(int children, int span) {
+	if (children < DENSE_FEWEST || span > DENSE_SPAN) return false;
+	return children > DENSE_MIN || span <= DENSE_FILL*children;
+    }
+
+    // Node[] can't be created directly, since Node is generic through VT;
+    // StringTrie<?>.Node[] can, and holds only Nodes of this trie
+    @SuppressWarnings("unchecked")
+    Node[] node_array(int n) { return (Node[])new StringTrie<?>.Node[n]; }
+
     //////////////// Outer Class Variables and Methods  /////////////////
 
     int size=0; // number of values stored in Trie
@@ -113,56 +334,152 @@ public class StringTrie<VT> {
     public int size() { return size; }
     public double load_factor() { return size*1.0 / nodes; }
 
+    // opt-in statistics, see TreeStats; a trie has no height or rotations
+    TreeStats stats = null;  // while null, every hook costs one null test
+    public TreeStats enableStats(boolean timing) {
+        disableStats();
+        stats = new TreeStats("StringTrie", () -> size, () -> nodes, null, timing);
+        return stats;
+    }
+    public void disableStats() {
+        if (stats != null) stats.unregisterMBean();
+        stats = null;
+    }
+    public Optional<TreeStats> stats() { return Optional.ofNullable(stats); }
+
+    /* The new value is worked out before anything changes: so a modifier
+       that throws leaves the trie as it was (no nodes made for a key that
+       gets no value), and one that itself sets or removes keys doesn't
+       find the path array in use.  Returns the value replaced, which is
+       the one the modifier saw unless the modifier changed it.
+    */
     public Optional<VT> and_modify(String key,
 			      Function<Optional<VT>,? extends VT> modifier) {
+	if (key==null || modifier==null) return Optional.empty();
+	var stats = this.stats;
+	long start = (stats==null) ? 0 : stats.begin();
+	Node found = node(key);
+	VT value = modifier.apply((found==null) ? Optional.empty() : found.item);
+	return store(key,value,stats,start);
+    }
+    
+    // insert or change key-value pair, return previous value
+    public Optional<VT> set(String key, VT val) {
+	if (key==null) return Optional.empty();
+	var stats = this.stats;
+	long start = (stats==null) ? 0 : stats.begin();
+	return store(key,val,stats,start);
+    }// set
+
+    // the node for key, or null
+    Node node(String key) {
+	Node current = root;
+	for (int k=0;k<key.length() && current!=null;k++)
+	    current = current.child(key.charAt(k));
+	return current;
+    }
+
+    // sets the value for key, or removes it if value is null; returns
+    // the previous value
+    Optional<VT> store(String key, VT value, TreeStats stats, long start) {
 	Optional<VT> answer = Optional.empty();
-	if (key==null || modifier==null) return answer;
+	Node[] path = path(key.length());
 	Node current = root;
 	int k = 0; // indexes chars in key
-	while (k < key.length()) {
-	    current =
-		current.children.computeIfAbsent(key.charAt(k),
-						 p -> {
-						     nodes++;
-						     return new Node();
-						 });
+	while (k < key.length() && current != null) {
+	    char c = key.charAt(k);
+	    current = (value==null) ? current.child(c) : current.child_or_add(c);
 	    k++;
+	    path[k] = current;
 	}//while
 	// at this point, current points to node containing the value,
-	// or the value doesn't exist inside the trie
-	answer = current.item; // previous item
-	current.item = Optional.ofNullable(modifier.apply(current.item));
-	if (answer.isEmpty() && current.item.isPresent())  size++;
-	return answer;	
-    }
-    
-    // insert or change key-value pair, return previous value
-    public Optional<VT> set(String key, VT val) {
-	return and_modify(key, x -> val);
-    }// set
+	// or (when removing) is null if the key isn't in the trie
+	if (current != null) {
+	    answer = current.item; // previous item
+	    current.item = Optional.ofNullable(value);
+	    if (answer.isEmpty() && value != null)  size++;
+	    if (answer.isPresent() && value==null) {
+		size--;
+		int top = prune(path,key,k);
+		if (ranked_by != null) rerank(path,top);
+	    }
+	    else if (ranked_by != null && value != null) rerank(path,k);
+	}
+	Arrays.fill(path,0,k+1,null);
+	if (stats != null) stats.end(value==null ? TreeStats.REMOVE : TreeStats.INSERT,k,start);
+	return answer;
+    }//store
 
     // lookup value given key, with option to delete, don't insert new nodes
     Optional<VT> search(String key, boolean delete) {
         Optional<VT> answer = Optional.empty();
 	if (key==null) return answer;
+	var stats = this.stats;
+	long start = (stats==null) ? 0 : stats.begin();
+	int op = delete ? TreeStats.REMOVE : TreeStats.SEARCH;
+	Node[] path = delete ? path(key.length()) : null;
 	Node current = root;
 	int k = 0; // indexes chars in key
 	while (k < key.length()) {
-	    current = current.children.get(key.charAt(k));
-	    if (current==null) return answer;
+	    current = current.child(key.charAt(k));
+	    if (current==null) {
+		if (path != null) Arrays.fill(path,0,k+1,null);
+		if (stats != null) stats.end(op,k,start);
+		return answer;
+	    }
 	    k++;
+	    if (path != null) path[k] = current;
 	}//while
 	answer = current.item;
 	if (delete && answer.isPresent()) {
 	    current.item = Optional.empty();
 	    size--;
+	    int top = prune(path,key,k);
+	    if (ranked_by != null) rerank(path,top);
 	}
+	if (path != null) Arrays.fill(path,0,k+1,null);
+	if (stats != null) stats.end(op,k,start);
 	return answer;
     }//search
 
     public Optional<VT> get(String key) { return search(key,false); }
     public Optional<VT> remove(String key) {return search(key,true); }
     
+    /* Nodes that lead to no value are dropped as soon as their last value
+       goes, so the trie only has a node for each prefix of a key (nodes
+       tracks the live keys), and one for the continuation, and there's
+       nothing left to sweep.
+       path holds the nodes on the key being changed, path[d] for its
+       first d chars.
+    */
+    Node[] path = null;
+
+    // a path array for a key of this length, with the root in place
+    Node[] path(int length) {
+	if (path==null || path.length <= length)
+	    path = node_array(Math.max(16,length+1));
+	path[0] = root;
+	return path;
+    }
+
+    // after the value at path[top] went: drops the nodes at the end of
+    // the path that now lead to no value, returns the depth of the
+    // deepest one left.  The continuation's node is kept (with the path
+    // to it), so that it sees keys added beneath it later.
+    int prune(Node[] path, String key, int top) {
+	int d = top;
+	Node resumed = continue_node.orElse(null);
+	while (d>0 && path[d].item.isEmpty() && path[d].count==0 && path[d] != resumed) {
+	    path[d-1].remove_child(key.charAt(d-1));
+	    nodes--;
+	    d--;
+	}
+	return d;
+    }
+
+    // drops nodes that lead to no value, returns how many; since remove
+    // and and_modify prune as they go, the only ones can be those left
+    // for a continuation that has since moved on
     public int cleanup() {
 	int snodes = nodes;
 	root.cleanup();
@@ -182,7 +499,7 @@ public class StringTrie<VT> {
         Node current = root;
         int k=0;
         while(k<start.length()) {
-            current = current.children.get(start.charAt(k));
+            current = current.child(start.charAt(k));
             if (current==null) {
                 continue_node = Optional.empty();
                 return;
@@ -200,7 +517,7 @@ public class StringTrie<VT> {
         continue_key = continue_key + nextchar;
         continue_node =
             continue_node
-            .flatMap(cn->Optional.ofNullable(cn.children.get(nextchar)));
+            .flatMap(cn->Optional.ofNullable(cn.child(nextchar)));
         return continue_node.isPresent();
     }//continue_search
     
@@ -214,7 +531,7 @@ public class StringTrie<VT> {
     }
     
     public Stream<SVPair<VT>> stream() {
-	return root.stream("",0);
+	return stream("",0);
     }
 
     public Stream<SVPair<VT>> stream(String prefix, int depth) {
@@ -223,7 +540,7 @@ public class StringTrie<VT> {
 	Node current = root;
 	int k = 0;
 	while (k<prefix.length()) {
-	    current = current.children.get(prefix.charAt(k));
+	    current = current.child(prefix.charAt(k));
 	    if (current==null) return Stream.empty();
 	    k++;
 	}
@@ -233,6 +550,193 @@ public class StringTrie<VT> {
 	return stream(prefix,0);
     }
     
+    ///// ranked completion
+
+    /* topK(prefix,k,rank) finds the k values under prefix that rank
+       highest, without visiting the whole subtree.  Every node keeps in
+       best the highest ranked value in its subtree, and a priority queue
+       holds nodes by their best, and values found, highest first.  Taking
+       a node off the queue puts its own value and its children on; taking
+       a value off outputs it.  A node only comes off before the values it
+       outranks, so this visits the prefix, then the nodes on the paths to
+       the k values and their siblings: O(prefix + k*(length+fanout)*log)
+       rather than the size of the subtree.
+
+       best is kept for one ranking at a time, the ranked_by comparator.
+       The first topK with a comparator (or rank_by) computes it for the
+       whole trie, O(n); after that set, and_modify and remove update it
+       along the path of the key they change (from the deepest node that
+       is still there), stopping where it no longer changes.  So pass the
+       same Comparator object each time: a different one (even an equal
+       lambda made anew) means another O(n) pass.
+    */
+    Comparator<? super VT> ranked_by = null;  // while null, best isn't kept
+
+    // keeps best up to date for rank from now on; null stops it
+    public void rank_by(Comparator<? super VT> rank) {
+	if (rank==ranked_by) return;
+	ranked_by = rank;
+	if (rank==null) root.unrank_all();
+	else root.rank_all();
+    }
+
+    // after the subtree of path[top] changed: recomputes best up the
+    // path, until it stays the same
+    void rerank(Node[] path, int top) {
+	for (int d=top;d>=0;d--) {
+	    VT old = path[d].best;
+	    path[d].rerank();
+	    if (path[d].best==old) break;
+	}
+    }
+
+    // a node still to search, ranked by its best, or a value found
+    record Candidate<VT>(StringTrie<VT>.Node node, String key, VT value) {}
+
+    // the (at most) k highest ranked values whose keys start with prefix,
+    // highest first, with their keys
+    public List<SVPair<VT>> topK(String prefix, int k, Comparator<? super VT> rank) {
+	if (prefix==null || rank==null || k<1) return new ArrayList<SVPair<VT>>();
+	rank_by(rank);
+	return top_k(node(prefix),prefix,k);
+    }
+    // the same for the continuation
+    public List<SVPair<VT>> current_topK(int k, Comparator<? super VT> rank) {
+	if (rank==null || k<1) return new ArrayList<SVPair<VT>>();
+	rank_by(rank);
+	return top_k(continue_node.orElse(null),continue_key,k);
+    }
+
+    List<SVPair<VT>> top_k(Node start, String prefix, int k) {
+	var answer = new ArrayList<SVPair<VT>>(Math.min(k,16));
+	if (start==null || start.best==null) return answer;
+	Comparator<? super VT> rank = ranked_by;
+	// highest first; between equals, values before nodes, which can't
+	// hold anything higher
+	var queue = new PriorityQueue<Candidate<VT>>((a,b) -> {
+		int c = rank.compare(b.value(),a.value());
+		if (c != 0) return c;
+		return Boolean.compare(a.node() != null, b.node() != null);
+	    });
+	queue.add(new Candidate<VT>(start,prefix,start.best));
+	while (answer.size() < k && !queue.isEmpty()) {
+	    var top = queue.poll();
+	    Node n = top.node();
+	    if (n==null) {
+		answer.add(new SVPair<VT>(top.key(),top.value()));
+		continue;
+	    }
+	    if (n.item.isPresent())
+		queue.add(new Candidate<VT>(null,top.key(),n.item.get()));
+	    for (int i=0;i<n.slots();i++) {
+		Node child = n.slot(i);
+		if (child != null && child.best != null)
+		    queue.add(new Candidate<VT>(child,top.key()+n.slot_label(i),child.best));
+	    }
+	}
+	return answer;
+    }//top_k
+
+    // a read-only copy packed into flat arrays, for tries that are built
+    // once and then only queried; see FrozenStringTrie.
+    public FrozenStringTrie<VT> freeze() {
+	return FrozenStringTrie.build(this);
+    }
+
+    ///// binary snapshots
+
+    /* Format: the int SNAPSHOT_MAGIC, the number of values as a long, then
+       one record per key-value pair, in depth-first order:
+
+           shared (varint)  length (varint)  suffix chars (varints)  value
+
+       where shared is the length of the prefix the key has in common with
+       the previous key and suffix is the rest of it (front coding).
+       Depth-first order puts keys with long common prefixes next to each
+       other, so mostly only the last few chars of each key are written.
+       Chars are varints, so ASCII takes one byte each.  Values are encoded
+       by the codec.
+
+       Reading keeps the path of nodes to the previous key, so each record
+       costs only its suffix: no key strings are built.
+    */
+    static final int SNAPSHOT_MAGIC = 0x54524945;  // "TRIE"
+
+    public void writeTo(WritableByteChannel channel, Codec<? super VT> codec)
+    throws IOException {
+        var out = new ChannelIO.Writer(channel);
+        out.write_int(SNAPSHOT_MAGIC);
+        out.write_long(size);
+        new Dumper(out,codec).dump(root,0);
+        out.flush();
+    }
+
+    class Dumper
+    {
+        final ChannelIO.Writer out;
+        final Codec<? super VT> codec;
+        final StringBuilder key = new StringBuilder();
+        int shared = 0;  // chars in common between key and the last key written
+        Dumper(ChannelIO.Writer out, Codec<? super VT> codec) {
+            this.out = out;  this.codec = codec;
+        }
+
+        void dump(Node n, int depth) throws IOException {
+            if (n.item.isPresent()) {
+                out.write_varint(shared);
+                out.write_varint(depth-shared);
+                for (int i=shared;i<depth;i++) out.write_varint(key.charAt(i));
+                out.write(codec,n.item.get());
+                shared = depth;
+            }
+            for (int i=0;i<n.slots();i++) {
+                var child = n.slot(i);
+                if (child==null) continue;
+                key.setLength(depth);
+                key.append(n.slot_label(i));
+                dump(child,depth+1);
+                shared = Math.min(shared,depth);
+            }
+        }
+    }//Dumper
+
+    public static <VT> StringTrie<VT> readFrom(ReadableByteChannel channel, Codec<VT> codec)
+    throws IOException {
+        var in = new ChannelIO.Reader(channel);
+        if (in.read_int() != SNAPSHOT_MAGIC) throw new IOException("not a StringTrie snapshot");
+        long n = in.read_long();
+        if (n < 0 || n > Integer.MAX_VALUE) throw new IOException("bad value count "+n);
+        var trie = new StringTrie<VT>();
+        var path = trie.node_array(16);  // nodes on the previous key
+        path[0] = trie.root;
+        int length = 0;  // of the previous key
+        for (long r=0;r<n;r++) {
+            long shared = in.read_varint();
+            long suffix = in.read_varint();
+            // no key can be as long as an array can be
+            if (shared < 0 || shared > length || suffix < 0
+                || suffix > Integer.MAX_VALUE - 8 - shared)
+                throw new StreamCorruptedException("corrupt snapshot record "+r);
+            length = (int)(shared + suffix);
+            // grown as chars arrive, so a bad suffix can't allocate much
+            for (int d=(int)shared;d<length;d++) {
+                long c = in.read_varint();
+                if (c < 0 || c > Character.MAX_VALUE)
+                    throw new StreamCorruptedException("corrupt snapshot record "+r);
+                if (d+1 == path.length)
+                    path = Arrays.copyOf(path, (int)Math.min(2L*path.length, Integer.MAX_VALUE-8));
+                path[d+1] = path[d].child_or_add((char)c);
+            }
+            var node = path[length];
+            if (node.item.isPresent()) throw new StreamCorruptedException("duplicate key in record "+r);
+            VT value = in.read(codec);
+            if (value==null) throw new StreamCorruptedException("null value in record "+r);
+            node.item = Optional.of(value);
+            trie.size++;
+        }
+        return trie;
+    }
+
     //////////// for testing
     public static void main1(String[] args) {
 	var GPA = new StringTrie<Double>();
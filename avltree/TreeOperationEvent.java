@@ -0,0 +1,38 @@
+package avltree;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/* One search, insert or remove on a structure with stats enabled (see
+   TreeStats).  Off by default, since there's one per operation; turn it
+   on in a .jfc settings file, or with
+       recording.enable("avltree.TreeOperation");
+   and look for bursts of events with rotations > 0.
+*/
+@Name("avltree.TreeOperation")
+@Label("Tree Operation")
+@Category("avltree")
+@Description("A search, insert or remove on an AVLSet or StringTrie with stats enabled")
+@Enabled(false)
+@StackTrace(false)
+class TreeOperationEvent extends jdk.jfr.Event
+{
+    @Label("Structure")
+    String structure;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Path Length")
+    @Description("Nodes compared (AVLSet) or chars followed (StringTrie)")
+    int path_length;
+
+    @Label("Rotations")
+    int rotations;
+
+    @Label("Size")
+    int size;
+}
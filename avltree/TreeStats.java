@@ -0,0 +1,252 @@
+/* Opt-in operation statistics for AVLSet and StringTrie.
+
+   A structure holds a null TreeStats until enableStats is called, and
+   every hook is behind a null test, so while stats are off the cost is
+   one field load and branch per operation (and per AVL adjust).  While
+   they're on, it counts:
+
+     - searches, inserts and removes, and the total length of the paths
+       they walked (nodes compared in an AVLSet, chars followed in a
+       StringTrie), giving the mean path length of each;
+     - rotations of each kind, LL, RR, LR and RL.  They are counted in
+       adjust, so rebalancing done by joins and bulk operations counts
+       too.  A StringTrie never rotates.
+     - if timing is on, a latency histogram per operation, with bucket b
+       counting operations that took 2^b to 2^(b+1)-1 nanoseconds.  This
+       costs two System.nanoTime calls per operation.
+
+   snapshot() copies the counters, along with the structure's current
+   size, node count and height, and the AVL height bound for that size,
+   1.44 log2(n+2) - 0.328.  A height close to the bound, or many rotations
+   per update, means a key pattern (ascending keys, say) is driving the
+   rebalancing.
+
+   The same figures are exposed as an MXBean (see registerMBean), and
+   each operation can be recorded as a JFR event, avltree.TreeOperation
+   (see TreeOperationEvent), which is off unless a JFR configuration
+   turns it on.
+
+   The operation counters are plain longs, like the structures they
+   watch: not thread-safe, and a JMX client reading them from another
+   thread may see values a few operations old.  The rotation counters are
+   LongAdders, since the parallel set operations of AVLSet rotate on
+   several ForkJoin workers at once.  The JFR event's enablement is read
+   from its EventType, so while it is off no event is allocated.
+*/
+
+package avltree;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import jdk.jfr.EventType;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class TreeStats implements TreeStatsMXBean
+{
+    // operations
+    public static final int SEARCH = 0, INSERT = 1, REMOVE = 2;
+    static final String[] OPERATIONS = {"search", "insert", "remove"};
+    // rotations
+    public static final int LL = 0, RR = 1, LR = 2, RL = 3;
+    static final String[] ROTATIONS = {"LL", "RR", "LR", "RL"};
+
+    static final int BUCKETS = 64;  // one per power of 2 nanoseconds
+    static final EventType OPERATION_EVENT = EventType.getEventType(TreeOperationEvent.class);
+
+    final String structure;
+    final IntSupplier size, nodes, height;  // height is null if not tracked
+    final boolean timing;
+    final long[] operations = new long[OPERATIONS.length];
+    final long[] path_lengths = new long[OPERATIONS.length];
+    final LongAdder[] rotations = new LongAdder[ROTATIONS.length];
+    final long[][] latency;  // [operation][bucket], null if not timing
+    long rotations_before;  // total_rotations() when the current operation
+                            // began, while the event is on; else -1
+    ObjectName mbean_name = null;
+
+    TreeStats(String structure, IntSupplier size, IntSupplier nodes,
+              IntSupplier height, boolean timing) {
+        this.structure = structure;
+        this.size = size;
+        this.nodes = nodes;
+        this.height = height;
+        this.timing = timing;
+        latency = timing ? new long[OPERATIONS.length][BUCKETS] : null;
+        for (int k=0;k<rotations.length;k++) rotations[k] = new LongAdder();
+    }
+
+    ///// hooks, called by the structure
+
+    // at the start of an operation; returns the start time, for end
+    long begin() {
+        rotations_before = OPERATION_EVENT.isEnabled() ? total_rotations() : -1;
+        return timing ? System.nanoTime() : 0;
+    }
+
+    void end(int op, int path_length, long start) {
+        operations[op]++;
+        path_lengths[op] += path_length;
+        if (timing) latency[op][bucket(System.nanoTime() - start)]++;
+        if (OPERATION_EVENT.isEnabled()) {
+            var event = new TreeOperationEvent();
+            event.structure = structure;
+            event.operation = OPERATIONS[op];
+            event.path_length = path_length;
+            // 0 if the event was turned on during the operation
+            event.rotations = (rotations_before < 0) ? 0 : (int)(total_rotations() - rotations_before);
+            event.size = size.getAsInt();
+            event.commit();
+        }
+    }
+
+    void rotated(int kind) { rotations[kind].increment(); }
+
+    long total_rotations() {
+        long total = 0;
+        for (var r : rotations) total += r.sum();
+        return total;
+    }
+
+    static int bucket(long nanos) {
+        return (nanos <= 0) ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    // the largest height an AVL tree of n nodes can have
+    static int height_bound(long n) {
+        return (int)Math.floor(1.4405 * Math.log(n+2) / Math.log(2) - 0.3277);
+    }
+
+    ///// reading
+
+    public Snapshot snapshot() {
+        long[][] lat = null;
+        if (timing) {
+            lat = new long[OPERATIONS.length][];
+            for (int op=0;op<lat.length;op++) lat[op] = latency[op].clone();
+        }
+        int n = size.getAsInt();
+        return new Snapshot(structure, n, nodes.getAsInt(),
+                            (height==null) ? -1 : height.getAsInt(),
+                            (height==null) ? -1 : height_bound(n),
+                            operations.clone(), path_lengths.clone(),
+                            Arrays.stream(rotations).mapToLong(LongAdder::sum).toArray(), lat);
+    }
+
+    public void reset() {
+        Arrays.fill(operations,0);
+        Arrays.fill(path_lengths,0);
+        for (var r : rotations) r.reset();
+        if (timing) for (var buckets : latency) Arrays.fill(buckets,0);
+    }
+
+    /* A copy of the counters at one moment.  height and height_bound are
+       -1 for a StringTrie.  latency is null unless timing was on.
+    */
+    public record Snapshot(String structure, int size, int nodes,
+                           int height, int height_bound,
+                           long[] operations, long[] path_lengths,
+                           long[] rotations, long[][] latency)
+    {
+        public long count(int op) { return operations[op]; }
+        public long total_rotations() { return Arrays.stream(rotations).sum(); }
+
+        public double mean_path_length(int op) {
+            return (operations[op]==0) ? 0 : path_lengths[op] * 1.0 / operations[op];
+        }
+
+        // rotations per insert or remove
+        public double rotations_per_update() {
+            long updates = operations[INSERT] + operations[REMOVE];
+            return (updates==0) ? 0 : total_rotations() * 1.0 / updates;
+        }
+
+        // an upper bound on the latency of the given fraction (0..1) of
+        // operations of one kind, in nanoseconds; -1 if not known
+        public long latency_percentile(int op, double fraction) {
+            if (latency==null || operations[op]==0) return -1;
+            long wanted = (long)Math.ceil(fraction * operations[op]);
+            long seen = 0;
+            for (int b=0;b<BUCKETS;b++) {
+                seen += latency[op][b];
+                if (seen >= wanted && seen > 0) return (b >= 62) ? Long.MAX_VALUE : (2L<<b) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder(structure)
+                .append(": size ").append(size).append(", nodes ").append(nodes);
+            if (height >= 0)
+                sb.append(", height ").append(height).append(" (bound ").append(height_bound).append(')');
+            for (int op=0;op<OPERATIONS.length;op++) {
+                sb.append("\n  ").append(OPERATIONS[op]).append(": ").append(operations[op])
+                  .append(String.format(", mean path %.2f", mean_path_length(op)));
+                if (latency != null && operations[op] > 0)
+                    sb.append(", p50 <= ").append(latency_percentile(op,0.5))
+                      .append("ns, p99 <= ").append(latency_percentile(op,0.99)).append("ns");
+            }
+            if (height >= 0) {
+                sb.append("\n  rotations:");
+                for (int k=0;k<ROTATIONS.length;k++)
+                    sb.append(' ').append(ROTATIONS[k]).append(' ').append(rotations[k]);
+                sb.append(String.format(", %.3f per update", rotations_per_update()));
+            }
+            return sb.toString();
+        }
+    }//Snapshot
+
+    ///// JMX
+
+    // registers these stats with the platform MBean server, as
+    // avltree:type=<structure>,name=<name>
+    public ObjectName registerMBean(String name) throws JMException {
+        unregisterMBean();
+        var object_name = new ObjectName("avltree:type=" + structure
+                                         + ",name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, object_name);
+        mbean_name = object_name;
+        return object_name;
+    }
+
+    public void unregisterMBean() {
+        if (mbean_name==null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbean_name);
+        }
+        catch (JMException e) {}  // already unregistered by someone else
+        mbean_name = null;
+    }
+
+    public String getStructure() { return structure; }
+    public int getSize() { return size.getAsInt(); }
+    public int getNodes() { return nodes.getAsInt(); }
+    public int getHeight() { return (height==null) ? -1 : height.getAsInt(); }
+    public int getHeightBound() { return (height==null) ? -1 : height_bound(getSize()); }
+    public boolean isTiming() { return timing; }
+
+    public long getSearches() { return operations[SEARCH]; }
+    public long getInserts() { return operations[INSERT]; }
+    public long getRemoves() { return operations[REMOVE]; }
+    public double getMeanSearchPathLength() { return snapshot().mean_path_length(SEARCH); }
+    public double getMeanInsertPathLength() { return snapshot().mean_path_length(INSERT); }
+    public double getMeanRemovePathLength() { return snapshot().mean_path_length(REMOVE); }
+
+    public long getRotationsLL() { return rotations[LL].sum(); }
+    public long getRotationsRR() { return rotations[RR].sum(); }
+    public long getRotationsLR() { return rotations[LR].sum(); }
+    public long getRotationsRL() { return rotations[RL].sum(); }
+    public double getRotationsPerUpdate() { return snapshot().rotations_per_update(); }
+
+    public long latencyPercentileNanos(String operation, double fraction) {
+        int op = Arrays.asList(OPERATIONS).indexOf(operation);
+        if (op < 0) throw new IllegalArgumentException("unknown operation " + operation);
+        return snapshot().latency_percentile(op,fraction);
+    }
+
+    @Override
+    public String toString() { return snapshot().toString(); }
+
+}//TreeStats
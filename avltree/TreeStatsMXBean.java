@@ -0,0 +1,31 @@
+package avltree;
+
+/* The JMX view of a TreeStats; see TreeStats.registerMBean.  Heights are
+   -1 for a StringTrie, and latency percentiles -1 unless timing is on.
+*/
+public interface TreeStatsMXBean
+{
+    String getStructure();
+    int getSize();
+    int getNodes();
+    int getHeight();
+    int getHeightBound();
+    boolean isTiming();
+
+    long getSearches();
+    long getInserts();
+    long getRemoves();
+    double getMeanSearchPathLength();
+    double getMeanInsertPathLength();
+    double getMeanRemovePathLength();
+
+    long getRotationsLL();
+    long getRotationsRR();
+    long getRotationsLR();
+    long getRotationsRL();
+    double getRotationsPerUpdate();
+
+    // operation is "search", "insert" or "remove"; fraction is in 0..1
+    long latencyPercentileNanos(String operation, double fraction);
+    void reset();
+}
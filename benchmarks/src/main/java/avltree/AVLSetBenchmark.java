@@ -0,0 +1,145 @@
+package avltree;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* AVLSet hot paths, with java.util.TreeSet (a red-black tree) as the
+   baseline.  The build_ benchmarks measure n inserts into an empty set;
+   the others run against a set prefilled with the keys 0..n-1.  Lookup
+   keys come from a fixed table of random probes, about half of which miss.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class AVLSetBenchmark
+{
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "DESCENDING", "ZIGZAG"})
+    KeyPattern pattern;
+
+    static final int PROBES = 1<<12;  // power of 2, indexed with a mask
+
+    Integer[] keys;
+    Integer[] sorted_keys;
+    Integer[] probes;
+    AVLSet<Integer> avl;
+    TreeSet<Integer> treeset;
+    int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] k = pattern.keys(size, 42);
+        keys = new Integer[size];
+        for (int i=0;i<size;i++) keys[i] = k[i];
+        sorted_keys = keys.clone();
+        Arrays.sort(sorted_keys);
+        int[] p = KeyPattern.probes(size, PROBES, 43);
+        probes = new Integer[PROBES];
+        for (int i=0;i<PROBES;i++) probes[i] = p[i];
+        avl = new AVLSet<Integer>();
+        treeset = new TreeSet<Integer>();
+        for (var x : keys) { avl.insert(x); treeset.add(x); }
+    }
+
+    Integer probe() { return probes[next++ & (PROBES-1)]; }
+
+    ///// construction
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AVLSet<Integer> build_avlset() {
+        var s = new AVLSet<Integer>();
+        for (var x : keys) s.insert(x);
+        return s;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AVLSet<Integer> build_avlset_fromsorted() {
+        return AVLSet.fromSorted(sorted_keys);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AVLSet<Integer> build_avlset_from() {  // sorts a copy first
+        return AVLSet.from(Arrays.asList(keys));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TreeSet<Integer> build_treeset() {
+        var s = new TreeSet<Integer>();
+        for (var x : keys) s.add(x);
+        return s;
+    }
+
+    ///// lookups
+
+    @Benchmark
+    public boolean search_avlset() { return avl.search(probe()); }
+
+    @Benchmark
+    public boolean contains_avlset() { return avl.contains(probe()); }
+
+    @Benchmark
+    public boolean contains_treeset() { return treeset.contains(probe()); }
+
+    ///// removal: each op removes a key and puts it back, so size is stable
+
+    @Benchmark
+    public boolean remove_insert_avlset() {
+        Integer x = probe();
+        return avl.remove(x) && avl.insert(x);
+    }
+
+    @Benchmark
+    public boolean remove_insert_treeset() {
+        Integer x = probe();
+        return treeset.remove(x) && treeset.add(x);
+    }
+
+    ///// full in-order scans
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long stream_avlset() {
+        return avl.stream().mapToLong(x -> x).sum();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long parallel_stream_avlset() {
+        return avl.stream().parallel().mapToLong(x -> x).sum();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void iterator_avlset(Blackhole bh) {
+        for (var x : avl) bh.consume(x);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long stream_treeset() {
+        return treeset.stream().mapToLong(x -> x).sum();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long parallel_stream_treeset() {
+        return treeset.stream().parallel().mapToLong(x -> x).sum();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void iterator_treeset(Blackhole bh) {
+        for (var x : treeset) bh.consume(x);
+    }
+}//AVLSetBenchmark
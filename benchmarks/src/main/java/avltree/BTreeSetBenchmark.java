@@ -0,0 +1,51 @@
+package avltree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/* Lookups in a BTreeSet (64 keys per node) against AVLSet.search, on
+   the same Integer keys.  The BTreeSet is made with AVLSet.freeze(), as
+   for read-mostly data.  About half of the probes miss.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BTreeSetBenchmark
+{
+    @Param({"100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    KeyPattern pattern;
+
+    static final int PROBES = 1<<12;
+
+    Integer[] probes;
+    AVLSet<Integer> avl;
+    BTreeSet<Integer> btree;
+    int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        avl = new AVLSet<Integer>();
+        for (int x : pattern.keys(size, 42)) avl.insert(x);
+        btree = avl.freeze();
+        int[] p = KeyPattern.probes(size, PROBES, 43);
+        probes = new Integer[PROBES];
+        for (int i=0;i<PROBES;i++) probes[i] = p[i];
+    }
+
+    Integer probe() { return probes[next++ & (PROBES-1)]; }
+
+    @Benchmark
+    public boolean search_avlset() { return avl.search(probe()); }
+
+    @Benchmark
+    public boolean search_btreeset() { return btree.contains(probe()); }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BTreeSet<Integer> freeze() { return avl.freeze(); }
+}//BTreeSetBenchmark
@@ -0,0 +1,26 @@
+package avltree;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* Entry point of benchmarks.jar.  Takes the usual JMH command line
+   (e.g. "AVLSet -p size=1000000 -p pattern=RANDOM") and always adds the
+   GC profiler, which reports gc.alloc.rate.norm (bytes allocated per
+   operation) next to the timings, so allocation regressions show up in
+   the same run as latency regressions.
+*/
+public class BenchmarkMain
+{
+    public static void main(String[] args)
+        throws RunnerException, CommandLineOptionException {
+        var cmd = new CommandLineOptions(args);
+        var opts = new OptionsBuilder()
+            .parent(cmd)
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(opts).run();
+    }
+}//BenchmarkMain
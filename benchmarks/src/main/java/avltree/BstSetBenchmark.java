@@ -0,0 +1,49 @@
+package avltree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/* BstSet.insert (recursive, calls adjust() on the way up) against the
+   non-recursive Node.add, which never rebalances.  BstSet recomputes
+   depth() recursively inside adjust(), so insert is linear per call and
+   the sizes here stop well short of the AVLSet ones.  Node.add on
+   SEQUENTIAL or DESCENDING keys degenerates into a linked list.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xss64m"})
+public class BstSetBenchmark
+{
+    @Param({"1000", "10000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "DESCENDING", "ZIGZAG"})
+    KeyPattern pattern;
+
+    Integer[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] k = pattern.keys(size, 42);
+        keys = new Integer[size];
+        for (int i=0;i<size;i++) keys[i] = k[i];
+    }
+
+    @Benchmark
+    public BstSet<Integer> bstset_insert() {
+        var s = new BstSet<Integer>();
+        for (var x : keys) s.insert(x);
+        return s;
+    }
+
+    @Benchmark
+    public BstSet<Integer> node_add() {
+        var s = new BstSet<Integer>();
+        s.insert(keys[0]);
+        var root = (BstSet<Integer>.Node)s.root;
+        for (int i=1;i<keys.length;i++) root.add(keys[i]);
+        return s;
+    }
+}//BstSetBenchmark
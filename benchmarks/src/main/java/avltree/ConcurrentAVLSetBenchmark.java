@@ -0,0 +1,99 @@
+package avltree;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* Throughput scaling of ConcurrentAVLSet from 1 to 64 threads, against an
+   AVLSet behind one global lock (what callers do today) and the JDK's
+   ConcurrentSkipListSet.  Each operation picks a random key in 0..2n-1 and
+   does a contains, or with probability (100-read_percent)% an insert or a
+   remove, so the size stays around n.
+
+   The thread count can't be a @Param, so main() runs this class once per
+   thread count:  java -cp benchmarks.jar avltree.ConcurrentAVLSetBenchmark
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConcurrentAVLSetBenchmark
+{
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"90", "50"})
+    int read_percent;
+
+    ConcurrentAVLSet<Integer> concurrent;
+    AVLSet<Integer> locked;
+    ConcurrentSkipListSet<Integer> skiplist;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        concurrent = new ConcurrentAVLSet<Integer>();
+        locked = new AVLSet<Integer>();
+        skiplist = new ConcurrentSkipListSet<Integer>();
+        for (int x : KeyPattern.RANDOM.keys(2*size, 42)) {
+            if (x%2==0) {
+                concurrent.insert(x);
+                locked.insert(x);
+                skiplist.add(x);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState
+    {
+        SplittableRandom random;
+        @Setup(Level.Trial)
+        public void setup() { random = new SplittableRandom(Thread.currentThread().getId()); }
+    }
+
+    @Benchmark
+    public boolean concurrent_avlset(ThreadState ts) {
+        int op = ts.random.nextInt(100);
+        Integer x = ts.random.nextInt(2*size);
+        if (op < read_percent) return concurrent.contains(x);
+        else if (op%2==0) return concurrent.insert(x);
+        else return concurrent.remove(x);
+    }
+
+    @Benchmark
+    public boolean locked_avlset(ThreadState ts) {
+        int op = ts.random.nextInt(100);
+        Integer x = ts.random.nextInt(2*size);
+        synchronized (locked) {
+            if (op < read_percent) return locked.search(x);
+            else if (op%2==0) return locked.insert(x);
+            else return locked.remove(x);
+        }
+    }
+
+    @Benchmark
+    public boolean skiplist(ThreadState ts) {
+        int op = ts.random.nextInt(100);
+        Integer x = ts.random.nextInt(2*size);
+        if (op < read_percent) return skiplist.contains(x);
+        else if (op%2==0) return skiplist.add(x);
+        else return skiplist.remove(x);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] {1, 2, 4, 8, 16, 32, 64}) {
+            var opts = new OptionsBuilder()
+                .include(ConcurrentAVLSetBenchmark.class.getSimpleName())
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .build();
+            new Runner(opts).run();
+        }
+    }
+}//ConcurrentAVLSetBenchmark
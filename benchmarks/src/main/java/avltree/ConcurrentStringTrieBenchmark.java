@@ -0,0 +1,91 @@
+package avltree;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* Throughput of ConcurrentStringTrie from 1 to 64 threads, against a
+   StringTrie behind one global lock (what callers do today).  Keys are
+   the numbers 0..2n-1, zero-padded to a common width as in
+   StringTrieBenchmark.  Each operation picks a random key and does a get,
+   or with probability (100-read_percent)% a set or a remove, so the size
+   stays around n.
+
+   The thread count can't be a @Param, so main() runs this class once per
+   thread count:  java -cp benchmarks.jar avltree.ConcurrentStringTrieBenchmark
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConcurrentStringTrieBenchmark
+{
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"90", "50"})
+    int read_percent;
+
+    String[] keys;  // keys[x] is x, padded
+    ConcurrentStringTrie<Integer> concurrent;
+    StringTrie<Integer> locked;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int width = Integer.toString(2*size).length();
+        keys = new String[2*size];
+        for (int x=0;x<2*size;x++) keys[x] = StringTrieBenchmark.pad(x,width);
+        concurrent = new ConcurrentStringTrie<Integer>();
+        locked = new StringTrie<Integer>();
+        for (int x : KeyPattern.RANDOM.keys(2*size, 42)) {
+            if (x%2==0) {
+                concurrent.set(keys[x],x);
+                locked.set(keys[x],x);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState
+    {
+        SplittableRandom random;
+        @Setup(Level.Trial)
+        public void setup() { random = new SplittableRandom(Thread.currentThread().getId()); }
+    }
+
+    @Benchmark
+    public Object concurrent_trie(ThreadState ts) {
+        int op = ts.random.nextInt(100);
+        int x = ts.random.nextInt(2*size);
+        if (op < read_percent) return concurrent.get(keys[x]);
+        else if (op%2==0) return concurrent.set(keys[x],x);
+        else return concurrent.remove(keys[x]);
+    }
+
+    @Benchmark
+    public Object locked_trie(ThreadState ts) {
+        int op = ts.random.nextInt(100);
+        int x = ts.random.nextInt(2*size);
+        synchronized (locked) {
+            if (op < read_percent) return locked.get(keys[x]);
+            else if (op%2==0) return locked.set(keys[x],x);
+            else return locked.remove(keys[x]);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] {1, 2, 4, 8, 16, 32, 64}) {
+            var opts = new OptionsBuilder()
+                .include(ConcurrentStringTrieBenchmark.class.getSimpleName())
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .build();
+            new Runner(opts).run();
+        }
+    }
+}//ConcurrentStringTrieBenchmark
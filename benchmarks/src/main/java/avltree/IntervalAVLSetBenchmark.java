@@ -0,0 +1,54 @@
+package avltree;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/* Point queries on n random intervals (starts in 0..10n, lengths mostly
+   short with a few long ones): IntervalAVLSet.overlapping against a scan
+   of all intervals in a list.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class IntervalAVLSetBenchmark
+{
+    @Param({"10000", "1000000"})
+    int size;
+
+    static final int PROBES = 1<<12;
+
+    IntervalAVLSet tree;
+    ArrayList<Interval> list;
+    long[] probes;
+    int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var random = new SplittableRandom(42);
+        tree = new IntervalAVLSet();
+        list = new ArrayList<Interval>();
+        for (int i=0;i<size;i++) {
+            long start = random.nextLong(10L*size);
+            long length = (random.nextInt(100)==0) ? random.nextLong(size) : random.nextLong(100);
+            var x = new Interval(start,start+length);
+            if (tree.insert(x)) list.add(x);
+        }
+        probes = new long[PROBES];
+        for (int i=0;i<PROBES;i++) probes[i] = random.nextLong(10L*size);
+    }
+
+    long probe() { return probes[next++ & (PROBES-1)]; }
+
+    @Benchmark
+    public long overlapping_tree() { return tree.overlapping(probe()).count(); }
+
+    @Benchmark
+    public long overlapping_scan() {
+        long p = probe();
+        return list.stream().filter(x -> x.contains(p)).count();
+    }
+}//IntervalAVLSetBenchmark
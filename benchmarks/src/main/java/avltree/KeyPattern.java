@@ -0,0 +1,46 @@
+package avltree;
+import java.util.Random;
+
+/* Orders in which keys are fed to the structures under test.  SEQUENTIAL
+   and DESCENDING are the classic worst cases for an unbalanced binary
+   search tree; ZIGZAG alternates between the smallest and the largest
+   remaining key, so every insert lands on the opposite spine of the tree.
+*/
+public enum KeyPattern
+{
+    SEQUENTIAL, RANDOM, DESCENDING, ZIGZAG;
+
+    // the keys 0..n-1, each exactly once, in this pattern's order
+    public int[] keys(int n, long seed) {
+        int[] a = new int[n];
+        switch (this) {
+        case SEQUENTIAL:
+            for (int i=0;i<n;i++) a[i] = i;
+            break;
+        case DESCENDING:
+            for (int i=0;i<n;i++) a[i] = n-1-i;
+            break;
+        case ZIGZAG:
+            int lo = 0, hi = n-1;
+            for (int i=0;i<n;i++) a[i] = (i%2==0) ? lo++ : hi--;
+            break;
+        case RANDOM:
+            for (int i=0;i<n;i++) a[i] = i;
+            var rand = new Random(seed);
+            for (int i=n-1;i>0;i--) {  // Fisher-Yates
+                int j = rand.nextInt(i+1);
+                int t = a[i]; a[i] = a[j]; a[j] = t;
+            }
+            break;
+        }
+        return a;
+    }//keys
+
+    // random lookup keys in 0..2n-1, so about half of them are absent
+    public static int[] probes(int n, int count, long seed) {
+        var rand = new Random(seed);
+        int[] p = new int[count];
+        for (int i=0;i<count;i++) p[i] = rand.nextInt(2*n);
+        return p;
+    }
+}//KeyPattern
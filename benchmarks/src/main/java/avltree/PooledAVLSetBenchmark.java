@@ -0,0 +1,67 @@
+package avltree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/* PooledAVLSet (nodes in parallel arrays) against AVLSet (node objects)
+   with the same Integer keys: n inserts into an empty set, and lookups
+   in a prefilled set, about half of which miss.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PooledAVLSetBenchmark
+{
+    @Param({"10000", "1000000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    KeyPattern pattern;
+
+    static final int PROBES = 1<<12;
+
+    Integer[] keys;
+    Integer[] probes;
+    PooledAVLSet<Integer> pooled;
+    AVLSet<Integer> avl;
+    int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] k = pattern.keys(size, 42);
+        keys = new Integer[size];
+        for (int i=0;i<size;i++) keys[i] = k[i];
+        int[] p = KeyPattern.probes(size, PROBES, 43);
+        probes = new Integer[PROBES];
+        for (int i=0;i<PROBES;i++) probes[i] = p[i];
+        pooled = new PooledAVLSet<Integer>(size);
+        avl = new AVLSet<Integer>();
+        for (var x : keys) { pooled.insert(x); avl.insert(x); }
+    }
+
+    Integer probe() { return probes[next++ & (PROBES-1)]; }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PooledAVLSet<Integer> build_pooled() {
+        var s = new PooledAVLSet<Integer>();
+        for (var x : keys) s.insert(x);
+        return s;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AVLSet<Integer> build_avlset() {
+        var s = new AVLSet<Integer>();
+        for (var x : keys) s.insert(x);
+        return s;
+    }
+
+    @Benchmark
+    public boolean search_pooled() { return pooled.contains(probe()); }
+
+    @Benchmark
+    public boolean search_avlset() { return avl.search(probe()); }
+}//PooledAVLSetBenchmark
@@ -0,0 +1,67 @@
+package avltree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/* LongAVLSet against AVLSet<Long> with the same keys: n inserts into an
+   empty set, and lookups in a prefilled set (about half of them miss).
+   Run with -prof gc to compare the bytes allocated per insert.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PrimitiveAVLSetBenchmark
+{
+    @Param({"10000", "1000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    KeyPattern pattern;
+
+    static final int PROBES = 1<<12;
+
+    long[] keys;
+    long[] probes;
+    LongAVLSet primitive;
+    AVLSet<Long> boxed;
+    int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int[] k = pattern.keys(size, 42);
+        keys = new long[size];
+        for (int i=0;i<size;i++) keys[i] = k[i];
+        int[] p = KeyPattern.probes(size, PROBES, 43);
+        probes = new long[PROBES];
+        for (int i=0;i<PROBES;i++) probes[i] = p[i];
+        primitive = new LongAVLSet();
+        boxed = new AVLSet<Long>();
+        for (long x : keys) { primitive.insert(x); boxed.insert(x); }
+    }
+
+    long probe() { return probes[next++ & (PROBES-1)]; }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LongAVLSet build_longavlset() {
+        var s = new LongAVLSet();
+        for (long x : keys) s.insert(x);
+        return s;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AVLSet<Long> build_avlset() {
+        var s = new AVLSet<Long>();
+        for (long x : keys) s.insert(x);
+        return s;
+    }
+
+    @Benchmark
+    public boolean contains_longavlset() { return primitive.contains(probe()); }
+
+    @Benchmark
+    public boolean contains_avlset() { return boxed.search(probe()); }
+}//PrimitiveAVLSetBenchmark
@@ -0,0 +1,89 @@
+package avltree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/* Merging two AVLSets: the join-based union/intersect/difference (and
+   their fork/join versions) against the element-by-element loops they
+   replace.  Both sets draw RANDOM keys from 0..2n-1, so they overlap by
+   about half.  The target set is rebuilt before every invocation since
+   all of these modify it.  The batch benchmarks apply the other set's
+   keys in their original, unsorted order, as a burst of events would
+   arrive.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SetOpsBenchmark
+{
+    @Param({"100000", "1000000"})
+    int size;
+
+    // size of the other set relative to the target, in percent
+    @Param({"1", "100"})
+    int percent;
+
+    Integer[] sorted_target;
+    java.util.List<Integer> batch;
+    AVLSet<Integer> other;
+    AVLSet<Integer> target;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var target_keys = new java.util.ArrayList<Integer>();
+        for (int x : KeyPattern.probes(size, size, 42)) target_keys.add(x);
+        var t = AVLSet.from(target_keys);
+        sorted_target = t.stream().toArray(Integer[]::new);
+        var other_keys = new java.util.ArrayList<Integer>();
+        for (int x : KeyPattern.probes(size, size*percent/100, 43)) other_keys.add(x);
+        other = AVLSet.from(other_keys);
+        batch = other_keys;
+    }
+
+    @Setup(Level.Invocation)
+    public void fresh_target() { target = AVLSet.fromSorted(sorted_target); }
+
+    @Benchmark
+    public AVLSet<Integer> union_join() { target.union(other); return target; }
+
+    @Benchmark
+    public AVLSet<Integer> union_parallel() { target.parallelUnion(other); return target; }
+
+    @Benchmark
+    public AVLSet<Integer> union_insert_loop() {
+        for (var x : other) target.insert(x);
+        return target;
+    }
+
+    @Benchmark
+    public AVLSet<Integer> intersect_join() { target.intersect(other); return target; }
+
+    @Benchmark
+    public AVLSet<Integer> difference_join() { target.difference(other); return target; }
+
+    @Benchmark
+    public AVLSet<Integer> difference_remove_loop() {
+        for (var x : other) target.remove(x);
+        return target;
+    }
+
+    @Benchmark
+    public AVLSet<Integer> insert_all() { target.insertAll(batch); return target; }
+
+    @Benchmark
+    public AVLSet<Integer> insert_all_loop() {
+        for (var x : batch) target.insert(x);
+        return target;
+    }
+
+    @Benchmark
+    public AVLSet<Integer> remove_all() { target.removeAll(batch); return target; }
+
+    @Benchmark
+    public AVLSet<Integer> remove_all_loop() {
+        for (var x : batch) target.remove(x);
+        return target;
+    }
+}//SetOpsBenchmark
@@ -0,0 +1,125 @@
+package avltree;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/* StringTrie set/get/stream(prefix) against a HashMap<String,Integer>
+   baseline, and get/stream(prefix) on the trie's frozen copy.  Keys are the decimal representations of the ints produced
+   by the KeyPattern, zero-padded to a common width so that they share
+   prefixes the way phone numbers do.  The prefix scans use the first
+   width-3 digits of a probe key, i.e. subtries of about 1000 values.
+   topk_* find the 10 largest values under such a prefix, with topK and
+   by streaming and sorting the subtrie.
+   The trie takes about 75 bytes per node, so sizes stop at 10^6 by default
+   (pass -p size=10000000 with a larger heap to go further).
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class StringTrieBenchmark
+{
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "DESCENDING", "ZIGZAG"})
+    KeyPattern pattern;
+
+    static final int PROBES = 1<<12;
+    static final int TOP = 10;
+    static final Comparator<Integer> RANK = Comparator.naturalOrder();
+
+    String[] keys;
+    String[] probes;
+    String[] prefixes;
+    StringTrie<Integer> trie;
+    FrozenStringTrie<Integer> frozen;
+    HashMap<String,Integer> hashmap;
+    int next = 0;
+
+    static String pad(int x, int width) {
+        var s = new StringBuilder(Integer.toString(x));
+        while (s.length()<width) s.insert(0,'0');
+        return s.toString();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int width = Integer.toString(2*size).length();
+        int[] k = pattern.keys(size, 42);
+        keys = new String[size];
+        for (int i=0;i<size;i++) keys[i] = pad(k[i],width);
+        int[] p = KeyPattern.probes(size, PROBES, 43);
+        probes = new String[PROBES];
+        prefixes = new String[PROBES];
+        for (int i=0;i<PROBES;i++) {
+            probes[i] = pad(p[i],width);
+            prefixes[i] = probes[i].substring(0, Math.max(0,width-3));
+        }
+        trie = new StringTrie<Integer>();
+        hashmap = new HashMap<String,Integer>();
+        for (int i=0;i<size;i++) { trie.set(keys[i],i); hashmap.put(keys[i],i); }
+        frozen = trie.freeze();
+        trie.rank_by(RANK);
+    }
+
+    int index() { return next++ & (PROBES-1); }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public StringTrie<Integer> build_trie() {
+        var t = new StringTrie<Integer>();
+        for (int i=0;i<keys.length;i++) t.set(keys[i],i);
+        return t;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public HashMap<String,Integer> build_hashmap() {
+        var m = new HashMap<String,Integer>();
+        for (int i=0;i<keys.length;i++) m.put(keys[i],i);
+        return m;
+    }
+
+    @Benchmark
+    public Object get_trie() { return trie.get(probes[index()]); }
+
+    @Benchmark
+    public Object get_frozen() { return frozen.get(probes[index()]); }
+
+    @Benchmark
+    public Integer get_hashmap() { return hashmap.get(probes[index()]); }
+
+    @Benchmark
+    public long stream_prefix_trie() {
+        return trie.stream(prefixes[index()]).count();
+    }
+
+    @Benchmark
+    public long stream_prefix_frozen() {
+        return frozen.stream(prefixes[index()]).count();
+    }
+
+    @Benchmark
+    public List<SVPair<Integer>> topk_trie() {
+        return trie.topK(prefixes[index()],TOP,RANK);
+    }
+
+    @Benchmark
+    public List<SVPair<Integer>> topk_stream_sort() {  // what topK replaces
+        return trie.stream(prefixes[index()])
+            .sorted(Comparator.comparing(SVPair<Integer>::val,RANK.reversed()))
+            .limit(TOP)
+            .toList();
+    }
+
+    @Benchmark
+    public long stream_prefix_hashmap() {  // what the trie saves us from
+        String prefix = prefixes[index()];
+        return hashmap.keySet().stream().filter(s -> s.startsWith(prefix)).count();
+    }
+}//StringTrieBenchmark
@@ -0,0 +1,131 @@
+package avltree;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.*;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AVLMapTest
+{
+    @Test
+    void agrees_with_TreeMap() {
+        var map = new AVLMap<Integer,Integer>();
+        var reference = new TreeMap<Integer,Integer>();
+        var random = new Random(1);
+        for (int i=0;i<200000;i++) {
+            int k = random.nextInt(3000);
+            Integer v = i;
+            // functions that sometimes return null, which removes the key
+            BiFunction<Integer,Integer,Integer> remap = (x,old) ->
+                (old==null) ? ((v%2==0) ? null : v) : ((old%3==0) ? null : Integer.valueOf(old+1));
+            Function<Integer,Integer> make = x -> (v%5==0) ? null : v;
+            BiFunction<Integer,Integer,Integer> merge = (old,x) -> (old%2==0) ? null : Integer.valueOf(old+x);
+            switch (random.nextInt(8)) {
+                case 0 -> assertEquals(Optional.ofNullable(reference.put(k,v)), map.put(k,v));
+                case 1 -> assertEquals(Optional.ofNullable(reference.remove(k)), map.remove(k));
+                case 2 -> assertEquals(reference.compute(k,remap), map.compute(k,remap));
+                case 3 -> assertEquals(reference.computeIfAbsent(k,make), map.computeIfAbsent(k,make));
+                case 4 -> assertEquals(reference.computeIfPresent(k,remap), map.computeIfPresent(k,remap));
+                case 5 -> assertEquals(reference.merge(k,v,merge), map.merge(k,v,merge));
+                case 6 -> assertEquals(reference.containsKey(k), map.containsKey(k));
+                default -> assertEquals(Optional.ofNullable(reference.get(k)), map.get(k));
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        check_entries(reference, map.entryStream().collect(Collectors.toList()));
+        assertTrue(map.depth() <= 1.45*Math.log(map.size()+2)/Math.log(2) + 1);
+        var random_keys = new Random(2);
+        for (int i=0;i<2000;i++) {
+            int k = random_keys.nextInt(3200)-100;
+            assertEquals(key(reference.floorEntry(k)), map.floorEntry(k).map(e -> e.getKey()));
+            assertEquals(key(reference.lowerEntry(k)), map.lowerEntry(k).map(e -> e.getKey()));
+            assertEquals(key(reference.ceilingEntry(k)), map.ceilingEntry(k).map(e -> e.getKey()));
+            assertEquals(key(reference.higherEntry(k)), map.higherEntry(k).map(e -> e.getKey()));
+        }
+    }
+
+    static Optional<Integer> key(Map.Entry<Integer,Integer> e) {
+        return (e==null) ? Optional.empty() : Optional.of(e.getKey());
+    }
+
+    static void check_entries(SortedMap<Integer,Integer> expected,
+                              List<AVLMap.Entry<Integer,Integer>> entries) {
+        assertEquals(new ArrayList<Map.Entry<Integer,Integer>>(expected.entrySet()),
+                     new ArrayList<Map.Entry<Integer,Integer>>(entries));
+    }
+
+    @Test
+    void entry_streams_with_and_without_bounds() {
+        var map = new AVLMap<Integer,Integer>();
+        var reference = new TreeMap<Integer,Integer>();
+        for (int k=0;k<1000;k+=3) { map.put(k,-k); reference.put(k,-k); }
+        var random = new Random(3);
+        for (int i=0;i<300;i++) {
+            int lo = random.nextInt(1100)-50, hi = lo + random.nextInt(400);
+            boolean li = random.nextBoolean(), hi_in = random.nextBoolean();
+            check_entries(reference.subMap(lo,li,hi,hi_in),
+                          map.entryStream(lo,li,hi,hi_in).collect(Collectors.toList()));
+            check_entries(reference.headMap(hi,hi_in),
+                          map.entryStream(null,li,hi,hi_in).collect(Collectors.toList()));
+            check_entries(reference.tailMap(lo,li),
+                          map.entryStream(lo,li,null,hi_in).collect(Collectors.toList()));
+            check_entries(reference.subMap(lo,hi),
+                          map.entryStream(lo,hi).collect(Collectors.toList()));
+            assertEquals(reference.subMap(lo,true,hi,true).size(), map.countRange(lo,hi));
+        }
+        check_entries(reference, map.entryStream(null,null).collect(Collectors.toList()));
+    }
+
+    @Test
+    void custom_key_order() {
+        var map = new AVLMap<String,Integer>(String.CASE_INSENSITIVE_ORDER);
+        map.put("b",1);
+        map.put("A",2);
+        assertEquals(Optional.of(2), map.put("a",3));
+        assertEquals(2, map.size());
+        assertEquals("[A=3, b=1]", map.entryStream().collect(Collectors.toList()).toString());
+        assertEquals(Optional.of(1), map.remove("B"));
+    }
+
+    @Test
+    void entries_are_map_entries() {
+        var map = new AVLMap<Integer,String>();
+        map.put(1,"one");
+        var e = map.firstEntry().get();
+        assertEquals(Map.entry(1,"one"), e);
+        assertEquals(e, Map.entry(1,"one"));
+        assertEquals(Map.entry(1,"one").hashCode(), e.hashCode());
+        assertNotEquals(Map.entry(1,"two"), e);
+        e.setValue("uno");
+        assertEquals(Optional.of("uno"), map.get(1));
+        assertThrows(NullPointerException.class, () -> e.setValue(null));
+    }
+
+    @Test
+    void functions_may_read_but_not_change_the_map() {
+        var map = new AVLMap<Integer,Integer>();
+        for (int k=0;k<100;k+=2) map.put(k,k);
+        assertEquals(100, map.computeIfAbsent(51, k -> map.get(50).get() + map.size()));
+        assertThrows(ConcurrentModificationException.class,
+                     () -> map.computeIfAbsent(53, k -> { map.put(1000,1); return 3; }));
+        assertFalse(map.containsKey(53));
+        assertTrue(map.containsKey(1000));
+        assertThrows(IllegalStateException.class,
+                     () -> map.compute(55, (k,v) -> { throw new IllegalStateException(); }));
+        assertFalse(map.containsKey(55));
+        // the map still works normally afterwards
+        var reference = new TreeMap<Integer,Integer>();
+        map.forEach(reference::put);
+        for (int k=0;k<200;k++) {
+            assertEquals(Optional.ofNullable(reference.put(k,k)), map.put(k,k));
+            assertEquals(reference.size(), map.size());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package avltree;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/* What AVLSet has beyond OrderedSet (see OrderedSetTest): order
+   statistics, navigation, range views, bulk operations and snapshots,
+   each against TreeSet.
+*/
+class AVLSetTest
+{
+    static AVLSet<Integer> random_set(TreeSet<Integer> reference, int n, int range, long seed) {
+        var set = new AVLSet<Integer>();
+        var random = new Random(seed);
+        for (int i=0;i<n;i++) {
+            int k = random.nextInt(range);
+            assertEquals(reference.add(k), set.insert(k));
+        }
+        return set;
+    }
+
+    static <T> Optional<T> opt(T x) { return Optional.ofNullable(x); }
+
+    @Test
+    void order_statistics_and_navigation() {
+        var reference = new TreeSet<Integer>();
+        var set = random_set(reference,3000,10000,1);
+        var sorted = new ArrayList<Integer>(reference);
+        for (int i=0;i<sorted.size();i++) assertEquals(sorted.get(i), set.select(i).get());
+        assertTrue(set.select(-1).isEmpty());
+        assertTrue(set.select(sorted.size()).isEmpty());
+        var random = new Random(2);
+        for (int i=0;i<5000;i++) {
+            int x = random.nextInt(10200)-100, y = x + random.nextInt(500);
+            assertEquals(reference.headSet(x).size(), set.rank(x));
+            assertEquals(reference.subSet(x,true,y,true).size(), set.countRange(x,y));
+            assertEquals(opt(reference.floor(x)), set.floor(x));
+            assertEquals(opt(reference.lower(x)), set.lower(x));
+            assertEquals(opt(reference.ceiling(x)), set.ceiling(x));
+            assertEquals(opt(reference.higher(x)), set.higher(x));
+        }
+    }
+
+    @Test
+    void range_views() {
+        var reference = new TreeSet<Integer>();
+        var set = random_set(reference,2000,5000,3);
+        var random = new Random(4);
+        for (int i=0;i<500;i++) {
+            int lo = random.nextInt(5200)-100, hi = lo + random.nextInt(1000);
+            boolean li = random.nextBoolean(), hi_in = random.nextBoolean();
+            check_view(reference.subSet(lo,li,hi,hi_in), set.subSet(lo,li,hi,hi_in));
+            check_view(reference.headSet(hi,hi_in), set.headSet(hi,hi_in));
+            check_view(reference.tailSet(lo,li), set.tailSet(lo,li));
+        }
+        // views are live
+        var view = set.subSet(100,200);
+        for (int k=100;k<200;k++) set.insert(k);
+        assertEquals(100, view.size());
+        assertThrows(NullPointerException.class, () -> set.subSet(null,1));
+    }
+
+    static void check_view(NavigableSet<Integer> expected, AVLSet<Integer>.SubSet view) {
+        var items = new ArrayList<Integer>(expected);
+        assertEquals(expected.size(), view.size());
+        assertEquals(items, view.stream().collect(Collectors.toList()));
+        assertEquals(items, view.stream().parallel().collect(Collectors.toList()));
+        var iterated = new ArrayList<Integer>();
+        for (int x : view) iterated.add(x);
+        assertEquals(items, iterated);
+        assertEquals(opt(expected.isEmpty() ? null : expected.first()), view.min());
+        assertEquals(opt(expected.isEmpty() ? null : expected.last()), view.max());
+    }
+
+    @Test
+    void parallel_stream_and_spliterator() {
+        var reference = new TreeSet<Integer>();
+        var set = random_set(reference,100000,1000000,5);
+        assertEquals(new ArrayList<Integer>(reference),
+                     set.stream().parallel().collect(Collectors.toList()));
+        assertEquals(reference.stream().mapToLong(x -> x).sum(),
+                     set.stream().parallel().mapToLong(x -> x).sum());
+    }
+
+    @Test
+    void iterator_is_fail_fast() {
+        var set = AVLSet.fromSorted(IntStream.range(0,100).boxed().toArray(Integer[]::new));
+        var it = set.iterator();
+        it.next();
+        set.insert(1000);
+        assertThrows(ConcurrentModificationException.class, it::next);
+    }
+
+    @Test
+    void bulk_operations() {
+        var random = new Random(6);
+        for (int round=0;round<20;round++) {
+            var a = new TreeSet<Integer>();
+            var b = new TreeSet<Integer>();
+            var sa = random_set(a, random.nextInt(20000), 30000, random.nextLong());
+            var sb = random_set(b, random.nextInt(20000), 30000, random.nextLong());
+            boolean parallel = round%2==1;
+            var union = new TreeSet<Integer>(a);  union.addAll(b);
+            var inter = new TreeSet<Integer>(a);  inter.retainAll(b);
+            var diff = new TreeSet<Integer>(a);  diff.removeAll(b);
+            check_set(union, copy(sa).apply_union(sb,parallel));
+            check_set(inter, copy(sa).apply_intersect(sb,parallel));
+            check_set(diff, copy(sa).apply_difference(sb,parallel));
+            var batch = new ArrayList<Integer>(b);
+            var inserted = copy(sa);
+            assertEquals(union.size()-a.size(), inserted.insertAll(batch));
+            check_set(union, inserted);
+            var removed = copy(sa);
+            assertEquals(a.size()-diff.size(), removed.removeAll(batch));
+            check_set(diff, removed);
+        }
+    }
+
+    // a copy with the set operations as methods returning the set
+    static Bulk copy(AVLSet<Integer> set) {
+        var copy = new Bulk();
+        copy.load(set.stream().collect(Collectors.toList()));
+        return copy;
+    }
+    static class Bulk extends AVLSet<Integer>
+    {
+        Bulk apply_union(AVLSet<Integer> o, boolean p) { if (p) parallelUnion(o); else union(o); return this; }
+        Bulk apply_intersect(AVLSet<Integer> o, boolean p) { if (p) parallelIntersect(o); else intersect(o); return this; }
+        Bulk apply_difference(AVLSet<Integer> o, boolean p) { if (p) parallelDifference(o); else difference(o); return this; }
+    }
+
+    static void check_set(TreeSet<Integer> expected, AVLSet<Integer> set) {
+        assertEquals(expected.size(), set.size());
+        assertEquals(new ArrayList<Integer>(expected), set.stream().collect(Collectors.toList()));
+        assertTrue(set.depth() <= 1.45*Math.log(set.size()+2)/Math.log(2) + 1);
+        for (int i=0;i<expected.size();i+=97)
+            assertEquals(i, set.rank(set.select(i).get()));
+    }
+
+    @Test
+    void construction() {
+        var random = new Random(7);
+        var items = new ArrayList<Integer>();
+        for (int i=0;i<5000;i++) items.add(random.nextInt(3000));
+        items.add(null);
+        var reference = new TreeSet<Integer>();
+        for (Integer x : items) if (x != null) reference.add(x);
+        check_set(reference, AVLSet.from(items));
+        check_set(reference, items.stream().filter(x -> x!=null).collect(AVLSet.toAVLSet()));
+        check_set(reference, AVLSet.fromSorted(reference.toArray(new Integer[0])));
+        assertThrows(IllegalArgumentException.class, () -> AVLSet.fromSorted(new Integer[]{2,1}));
+        var frozen = AVLSet.from(items).freeze();
+        assertEquals(new ArrayList<Integer>(reference), frozen.stream().collect(Collectors.toList()));
+    }
+
+    @Test
+    void snapshots() throws IOException {
+        var reference = new TreeSet<Integer>();
+        var set = random_set(reference,20000,100000,8);
+        byte[] bytes = write(set);
+        var read = AVLSet.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes)), Codec.INT);
+        check_set(reference, read);
+        var strings = AVLSet.from(List.of("", "a", "é", "x".repeat(200000)));
+        var out = new ByteArrayOutputStream();
+        strings.writeTo(Channels.newChannel(out), Codec.STRING);
+        var strings_read = AVLSet.readFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())),
+                                           Codec.STRING);
+        assertEquals(strings.stream().collect(Collectors.toList()),
+                     strings_read.stream().collect(Collectors.toList()));
+        // truncated, and out of order
+        assertThrows(IOException.class, () -> AVLSet.readFrom(
+            Channels.newChannel(new ByteArrayInputStream(bytes,0,bytes.length-3)), Codec.INT));
+        byte[] swapped = bytes.clone();
+        for (int i=0;i<4;i++) {
+            byte t = swapped[12+i];  swapped[12+i] = swapped[16+i];  swapped[16+i] = t;
+        }
+        assertThrows(IOException.class, () -> AVLSet.readFrom(
+            Channels.newChannel(new ByteArrayInputStream(swapped)), Codec.INT));
+    }
+
+    static byte[] write(AVLSet<Integer> set) throws IOException {
+        var out = new ByteArrayOutputStream();
+        set.writeTo(Channels.newChannel(out), Codec.INT);
+        return out.toByteArray();
+    }
+
+    @Test
+    void augmented_range_aggregates() {
+        var sums = new AugmentedAVLSet<Integer,Long>(Monoid.of(0L, Long::sum, x -> (long)x));
+        var reference = new TreeSet<Integer>();
+        var random = new Random(9);
+        for (int i=0;i<20000;i++) {
+            int k = random.nextInt(3000);
+            if (random.nextInt(3)==0) assertEquals(reference.remove(k), sums.remove(k));
+            else assertEquals(reference.add(k), sums.insert(k));
+            if (i%100==0) {
+                int lo = random.nextInt(3000), hi = lo + random.nextInt(1000);
+                long expected = reference.subSet(lo,true,hi,true).stream().mapToLong(x -> x).sum();
+                assertEquals(expected, sums.rangeAggregate(lo,hi));
+            }
+        }
+        assertEquals(reference.stream().mapToLong(x -> x).sum(), sums.aggregate());
+    }
+
+    @Test
+    void interval_overlaps() {
+        var set = new IntervalAVLSet();
+        var reference = new TreeSet<Interval>();
+        var random = new Random(10);
+        for (int i=0;i<5000;i++) {
+            long start = random.nextInt(10000);
+            var x = new Interval(start, start + 1 + random.nextInt(300));
+            if (random.nextInt(4)==0) assertEquals(reference.remove(x), set.remove(x));
+            else assertEquals(reference.add(x), set.insert(x));
+        }
+        for (int i=0;i<300;i++) {
+            long lo = random.nextInt(10500), hi = lo + random.nextInt(200);
+            assertEquals(reference.stream().filter(x -> x.overlaps(lo,hi)).collect(Collectors.toList()),
+                         set.overlapping(lo,hi).collect(Collectors.toList()));
+            assertEquals(reference.stream().filter(x -> x.contains(lo)).collect(Collectors.toList()),
+                         set.overlapping(lo).collect(Collectors.toList()));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package avltree;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.*;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentAVLSetTest
+{
+    @Test
+    void agrees_with_TreeSet_on_one_thread() {
+        var set = new ConcurrentAVLSet<Integer>();
+        var reference = new TreeSet<Integer>();
+        var random = new Random(9);
+        for (int i=0;i<100000;i++) {
+            int k = random.nextInt(5000);
+            if (random.nextBoolean()) assertEquals(reference.add(k), set.insert(k));
+            else assertEquals(reference.remove(k), set.remove(k));
+            if (i%1000==0) assertEquals(reference.contains(i%5000), set.contains(i%5000));
+        }
+        assertEquals(reference.size(), set.size());
+        assertEquals(new ArrayList<Integer>(reference), set.stream().collect(Collectors.toList()));
+        var items = new ArrayList<Integer>();
+        set.iterator().forEachRemaining(items::add);
+        assertEquals(new ArrayList<Integer>(reference), items);
+        assertEquals(reference.first(), set.min().get());
+        assertEquals(reference.last(), set.max().get());
+        assertNull(set.check_balance(set.root_holder.right));
+    }
+
+    @Test
+    void iterator_remove() {
+        var set = new ConcurrentAVLSet<Integer>();
+        for (int k=0;k<100;k++) set.insert(k);
+        var it = set.iterator();
+        while (it.hasNext()) if (it.next()%3 != 0) it.remove();
+        assertEquals(34, set.size());
+        assertTrue(set.stream().allMatch(k -> k%3==0));
+    }
+
+    @Test
+    void stress_two_threads() throws InterruptedException { stress(2,1500); }
+
+    @Test
+    void stress_four_threads() throws InterruptedException { stress(4,1500); }
+
+    /* Checks against ConcurrentSkipListSet, with writers, each owning the
+       keys k with k%writers == its number, inserting and removing at random
+       in both sets, while readers traverse.  Keys that are multiples of 4
+       are inserted first and never removed, so every traversal must see
+       all of them, in increasing order, and min and max must be the
+       smallest and largest of them.  At the end both sets must agree and
+       the tree must be balanced.
+    */
+    static void stress(int threads, long millis) throws InterruptedException {
+        final int RANGE = 1<<12;  // keys 0..RANGE
+        var set = new ConcurrentAVLSet<Integer>();
+        var reference = new ConcurrentSkipListSet<Integer>();
+        for (int k=0;k<=RANGE;k+=4) { set.insert(k); reference.add(k); }
+        var stop = new AtomicBoolean(false);
+        var failure = new AtomicReference<String>();
+        var traversals = new LongAdder();
+        var workers = new ArrayList<Thread>();
+        int writers = Math.max(1,threads/2);
+        for (int w=0;w<writers;w++) {
+            final int id = w;
+            workers.add(new Thread(() -> {
+                var random = new Random(id);
+                while (!stop.get()) {
+                    int k = random.nextInt(RANGE);
+                    if (k%4==0 || k%writers != id) continue;
+                    boolean in = set.contains(k);
+                    if (in != reference.contains(k))
+                        failure.compareAndSet(null,"contains("+k+") is "+in);
+                    if (random.nextBoolean()) {
+                        if (set.insert(k) != reference.add(k))
+                            failure.compareAndSet(null,"insert("+k+") disagrees");
+                    }
+                    else if (set.remove(k) != reference.remove(k))
+                        failure.compareAndSet(null,"remove("+k+") disagrees");
+                }
+            }));
+        }
+        for (int r=writers;r<Math.max(2,threads);r++) {
+            final int kind = r%3;
+            workers.add(new Thread(() -> {
+                while (!stop.get()) {
+                    var seen = new ArrayList<Integer>();
+                    Consumer<Integer> visit = k -> {
+                        seen.add(k);
+                        if ((k & 15)==0) Thread.yield();  // let writers rotate mid-walk
+                    };
+                    if (kind==0) set.map_inorder(visit);
+                    else if (kind==1) set.iterator().forEachRemaining(visit);
+                    else set.stream().forEach(visit);
+                    int stable = 0;
+                    for (int i=0;i<seen.size();i++) {
+                        int k = seen.get(i);
+                        if (i>0 && seen.get(i-1) >= k)
+                            failure.compareAndSet(null,"out of order: "+seen.get(i-1)+" then "+k);
+                        if (k%4==0) {
+                            if (k != stable) failure.compareAndSet(null,"missed "+stable);
+                            stable = k+4;
+                        }
+                    }
+                    if (stable != RANGE+4) failure.compareAndSet(null,"missed "+stable);
+                    if (set.min().orElse(-1) != 0 || set.max().orElse(-1) != RANGE)
+                        failure.compareAndSet(null,"min/max "+set.min()+" "+set.max());
+                    traversals.increment();
+                }
+            }));
+        }
+        for (var t : workers) t.start();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (var t : workers) t.join();
+        assertNull(failure.get());
+        assertTrue(traversals.sum() > 0);
+        var items = new ArrayList<Integer>();
+        set.map_inorder(items::add);
+        assertEquals(new ArrayList<Integer>(reference), items);
+        assertEquals(reference.size(), set.size());
+        assertNull(set.check_balance(set.root_holder.right));
+    }
+}
@@ -0,0 +1,100 @@
+package avltree;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedAVLIndexTest
+{
+    @TempDir Path dir;
+
+    @Test
+    void agrees_with_TreeMap_across_reopening() throws IOException {
+        var file = dir.resolve("index");
+        var reference = new TreeMap<Long,Long>();
+        var random = new Random(1);
+        for (int session=0;session<3;session++) {
+            // small chunks, so nodes spread over many mappings
+            try (var index = MappedAVLIndex.open(file,12)) {
+                check(reference,index);
+                for (int i=0;i<30000;i++) {
+                    long k = random.nextInt(8000) - 4000;
+                    switch (random.nextInt(4)) {
+                        case 0, 1 -> assertEquals(reference.put(k,(long)i)==null, index.put(k,i));
+                        case 2 -> assertEquals(reference.remove(k)!=null, index.remove(k));
+                        default -> assertEquals(opt(reference.get(k)), index.get(k));
+                    }
+                    if (i%10000==0) index.force();
+                }
+                check(reference,index);
+            }
+        }
+    }
+
+    static OptionalLong opt(Long x) { return (x==null) ? OptionalLong.empty() : OptionalLong.of(x); }
+
+    static void check(TreeMap<Long,Long> reference, MappedAVLIndex index) {
+        assertEquals(reference.size(), index.size());
+        var keys = new ArrayList<Long>();
+        index.forEach(keys::add);
+        assertEquals(new ArrayList<Long>(reference.keySet()), keys);
+        for (var e : reference.entrySet()) assertEquals(e.getValue(), index.get(e.getKey()).getAsLong());
+        if (!reference.isEmpty()) {
+            assertEquals(reference.firstKey(), index.min().getAsLong());
+            assertEquals(reference.lastKey(), index.max().getAsLong());
+        }
+        assertTrue(index.depth() <= 1.45*Math.log(index.size()+2)/Math.log(2) + 1);
+    }
+
+    @Test
+    void refuses_a_file_changed_after_force() throws IOException {
+        var file = dir.resolve("index");
+        var index = MappedAVLIndex.open(file);
+        index.put(1,1);
+        index.force();
+        try (var again = MappedAVLIndex.open(file)) { assertEquals(1, again.size()); }
+        index.put(2,2);  // not forced: as if the process died here
+        assertThrows(IOException.class, () -> MappedAVLIndex.open(file));
+        index.close();
+        try (var again = MappedAVLIndex.open(file)) { assertEquals(2, again.size()); }
+    }
+
+    @Test
+    void refuses_corrupt_headers() throws IOException {
+        var file = dir.resolve("index");
+        try (var index = MappedAVLIndex.open(file)) {
+            for (int k=0;k<100;k++) index.put(k,k);
+        }
+        // offset, value, width in bytes
+        long[][] damage = {
+            {MappedAVLIndex.H_CHUNK_BITS, 40, 4}, {MappedAVLIndex.H_CHUNK_BITS, 5, 4},
+            {MappedAVLIndex.H_ROOT, -1, 4}, {MappedAVLIndex.H_ROOT, 1<<30, 4},
+            {MappedAVLIndex.H_SIZE, -5, 8}, {MappedAVLIndex.H_NEXT_SLOT, 0, 8},
+            {MappedAVLIndex.H_NEXT_SLOT, 1L<<40, 8}, {MappedAVLIndex.H_FREE, -2, 4},
+            {MappedAVLIndex.H_MAGIC, 0, 8}};
+        for (long[] d : damage) {
+            var copy = dir.resolve("copy");
+            Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+            try (var channel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+                var bytes = ByteBuffer.allocate((int)d[2]).order(ByteOrder.LITTLE_ENDIAN);
+                if (d[2]==8) bytes.putLong(d[1]); else bytes.putInt((int)d[1]);
+                channel.write(bytes.flip(), d[0]);
+            }
+            assertThrows(IOException.class, () -> MappedAVLIndex.open(copy), "offset "+d[0]);
+        }
+        var short_file = dir.resolve("short");
+        Files.write(short_file, new byte[10]);
+        assertThrows(IOException.class, () -> MappedAVLIndex.open(short_file));
+    }
+}
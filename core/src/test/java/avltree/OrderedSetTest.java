@@ -0,0 +1,128 @@
+package avltree;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Every OrderedSet against TreeSet, with natural order and with a
+   comparator of its own.
+*/
+class OrderedSetTest
+{
+    record Maker(String name, Function<Comparator<Integer>,OrderedSet<Integer>> make) {
+        @Override
+        public String toString() { return name; }
+    }
+
+    static Stream<Maker> sets() {
+        return Stream.of(new Maker("AVLSet", cmp -> new AVLSet<Integer>(cmp)),
+                         new Maker("PersistentAVLSet", cmp -> new PersistentAVLSet<Integer>(cmp)),
+                         new Maker("ConcurrentAVLSet", cmp -> new ConcurrentAVLSet<Integer>(cmp)),
+                         new Maker("PooledAVLSet", cmp -> new PooledAVLSet<Integer>(cmp)),
+                         new Maker("BTreeSet", cmp -> new BTreeSet<Integer>(cmp)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("sets")
+    void agrees_with_TreeSet(Maker maker) {
+        check(maker.make().apply(null), new TreeSet<Integer>());
+    }
+
+    @ParameterizedTest
+    @MethodSource("sets")
+    void agrees_with_TreeSet_in_reverse(Maker maker) {
+        Comparator<Integer> reverse = Comparator.reverseOrder();
+        check(maker.make().apply(reverse), new TreeSet<Integer>(reverse));
+    }
+
+    static void check(OrderedSet<Integer> set, TreeSet<Integer> reference) {
+        var random = new Random(5);
+        for (int i=0;i<60000;i++) {
+            int k = random.nextInt(4000);
+            switch (random.nextInt(5)) {
+                case 0, 1 -> assertEquals(reference.add(k), set.insert(k));
+                case 2, 3 -> assertEquals(reference.remove(k), set.remove(k));
+                default -> assertEquals(reference.contains(k), set.contains(k));
+            }
+            if (i%10000==0) check_contents(set,reference);
+        }
+        check_contents(set,reference);
+        // a bounded depth: an AVL tree is at most about 1.44*log2(n) high
+        assertTrue(set.depth() <= 1.45*Math.log(set.size()+2)/Math.log(2) + 1);
+        while (!reference.isEmpty()) {
+            int k = reference.pollFirst();
+            assertTrue(set.remove(k));
+        }
+        assertTrue(set.is_empty());
+        assertTrue(set.min().isEmpty());
+        check_contents(set,reference);
+    }
+
+    static void check_contents(OrderedSet<Integer> set, TreeSet<Integer> reference) {
+        var expected = new ArrayList<Integer>(reference);
+        assertEquals(reference.size(), set.size());
+        assertEquals(expected, set.stream().collect(Collectors.toList()));
+        var items = new ArrayList<Integer>();
+        set.map_inorder(items::add);
+        assertEquals(expected, items);
+        items.clear();
+        for (int x : set) items.add(x);
+        assertEquals(expected, items);
+        if (!reference.isEmpty()) {
+            assertEquals(reference.first(), set.min().get());
+            assertEquals(reference.last(), set.max().get());
+        }
+        // the stream reports the set's comparator, so sorted() really sorts
+        List<Integer> natural = expected.stream().sorted().collect(Collectors.toList());
+        assertEquals(natural, set.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("sets")
+    void iterator_sees_what_stream_sees(Maker maker) {
+        var set = maker.make().apply(null);
+        for (int k=0;k<1000;k++) set.insert((k*7919)%1000);
+        var it = set.iterator();
+        for (int k=0;k<1000;k++) assertEquals(k, it.next());
+        assertFalse(it.hasNext());
+    }
+
+    @ParameterizedTest
+    @MethodSource("sets")
+    void rejects_null(Maker maker) {
+        var set = maker.make().apply(null);
+        set.insert(1);
+        assertFalse(set.insert(null));
+        assertFalse(set.remove(null));
+        assertFalse(set.contains(null));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void persistent_snapshots_keep_their_version() {
+        var set = new PersistentAVLSet<Integer>();
+        var versions = new ArrayList<PersistentAVLSet<Integer>>();
+        var contents = new ArrayList<List<Integer>>();
+        var reference = new TreeSet<Integer>();
+        var random = new Random(11);
+        for (int i=0;i<5000;i++) {
+            int k = random.nextInt(500);
+            if (random.nextBoolean()) { set.insert(k); reference.add(k); }
+            else { set.remove(k); reference.remove(k); }
+            if (i%500==0) {
+                versions.add(set.snapshot());
+                contents.add(new ArrayList<Integer>(reference));
+            }
+        }
+        for (int v=0;v<versions.size();v++)
+            assertEquals(contents.get(v), versions.get(v).stream().collect(Collectors.toList()));
+    }
+}
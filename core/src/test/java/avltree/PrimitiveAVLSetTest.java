@@ -0,0 +1,57 @@
+package avltree;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimitiveAVLSetTest
+{
+    @Test
+    void IntAVLSet_agrees_with_TreeSet() {
+        var set = new IntAVLSet();
+        var reference = new TreeSet<Integer>();
+        var random = new Random(1);
+        for (int i=0;i<100000;i++) {
+            int k = random.nextInt(5000) - 2500;
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(reference.add(k), set.insert(k));
+                case 1 -> assertEquals(reference.remove(k), set.remove(k));
+                default -> assertEquals(reference.contains(k), set.contains(k));
+            }
+        }
+        assertEquals(reference.size(), set.size());
+        assertEquals(reference.first(), set.min().getAsInt());
+        assertEquals(reference.last(), set.max().getAsInt());
+        var expected = new ArrayList<Integer>(reference);
+        assertEquals(expected, set.stream().boxed().collect(Collectors.toList()));
+        var items = new ArrayList<Integer>();
+        set.forEach(items::add);
+        assertEquals(expected, items);
+        items.clear();
+        set.iterator().forEachRemaining((int x) -> items.add(x));
+        assertEquals(expected, items);
+        assertTrue(set.depth() <= 1.45*Math.log(set.size()+2)/Math.log(2) + 1);
+    }
+
+    @Test
+    void LongAVLSet_agrees_with_TreeSet() {
+        var set = new LongAVLSet();
+        var reference = new TreeSet<Long>();
+        var random = new Random(2);
+        for (int i=0;i<100000;i++) {
+            long k = (random.nextInt(5000) - 2500) * (1L<<35);
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(reference.add(k), set.insert(k));
+                case 1 -> assertEquals(reference.remove(k), set.remove(k));
+                default -> assertEquals(reference.contains(k), set.contains(k));
+            }
+        }
+        assertEquals(reference.size(), set.size());
+        assertEquals(reference.first(), set.min().getAsLong());
+        assertEquals(reference.last(), set.max().getAsLong());
+        assertEquals(new ArrayList<Long>(reference), set.stream().boxed().collect(Collectors.toList()));
+        assertTrue(set.depth() <= 1.45*Math.log(set.size()+2)/Math.log(2) + 1);
+    }
+}
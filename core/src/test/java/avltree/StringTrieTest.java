@@ -0,0 +1,248 @@
+package avltree;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/* StringTrie, ConcurrentStringTrie and FrozenStringTrie against TreeMap,
+   on keys from a small alphabet so that they share long prefixes.
+*/
+class StringTrieTest
+{
+    static String random_key(Random random) {
+        var sb = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i=0;i<length;i++) sb.append("abcé一".charAt(random.nextInt(5)));
+        return sb.toString();
+    }
+
+    static Map<String,Integer> contents(Stream<SVPair<Integer>> stream) {
+        var map = new TreeMap<String,Integer>();
+        stream.forEach(p -> assertNull(map.put(p.key(), p.val()), "key twice: "+p.key()));
+        return map;
+    }
+
+    static Map<String,Integer> with_prefix(TreeMap<String,Integer> reference, String prefix) {
+        var map = new TreeMap<String,Integer>();
+        reference.forEach((k,v) -> { if (k.startsWith(prefix)) map.put(k,v); });
+        return map;
+    }
+
+    @Test
+    void StringTrie_agrees_with_TreeMap() {
+        var trie = new StringTrie<Integer>();
+        var reference = new TreeMap<String,Integer>();
+        var random = new Random(1);
+        for (int i=0;i<100000;i++) {
+            String key = random_key(random);
+            Integer v = i;
+            switch (random.nextInt(5)) {
+                case 0, 1 -> assertEquals(Optional.ofNullable(reference.put(key,v)), trie.set(key,v));
+                case 2 -> assertEquals(Optional.ofNullable(reference.remove(key)), trie.remove(key));
+                case 3 -> {  // and_modify, removing odd values
+                    Integer old = reference.get(key);
+                    Integer now = (old==null) ? v : ((old%2==1) ? null : Integer.valueOf(old+1));
+                    if (now==null) reference.remove(key); else reference.put(key,now);
+                    assertEquals(Optional.ofNullable(old),
+                                 trie.and_modify(key, o -> o.isEmpty() ? v : ((o.get()%2==1) ? null : o.get()+1)));
+                }
+                default -> assertEquals(Optional.ofNullable(reference.get(key)), trie.get(key));
+            }
+            assertEquals(reference.size(), trie.size());
+        }
+        assertEquals(reference, contents(trie.stream()));
+        for (int i=0;i<200;i++) {
+            String prefix = random_key(random);
+            assertEquals(with_prefix(reference,prefix), contents(trie.stream(prefix)));
+        }
+        // and empty again
+        for (String key : new ArrayList<String>(reference.keySet())) trie.remove(key);
+        assertEquals(0, trie.size());
+        assertEquals(0, trie.stream().count());
+    }
+
+    @Test
+    void and_modify_may_use_the_trie() {
+        var trie = new StringTrie<Integer>();
+        trie.set("abc",1);
+        trie.and_modify("abd", o -> { trie.set("abe",5); trie.remove("abc"); return 2; });
+        assertEquals(Map.of("abd",2,"abe",5), contents(trie.stream()));
+        assertThrows(IllegalStateException.class,
+                     () -> trie.and_modify("xyz", o -> { throw new IllegalStateException(); }));
+        assertEquals(Optional.empty(), trie.get("xyz"));
+        assertEquals(2, trie.size());
+    }
+
+    @Test
+    void topK_agrees_with_sorting() {
+        var trie = new StringTrie<Integer>();
+        var reference = new TreeMap<String,Integer>();
+        var random = new Random(2);
+        Comparator<Integer> rank = Comparator.naturalOrder();
+        for (int i=0;i<20000;i++) {
+            String key = random_key(random);
+            if (random.nextInt(4)==0) { trie.remove(key); reference.remove(key); }
+            else { trie.set(key,i); reference.put(key,i); }
+            if (i%500==0) trie.topK("",1,rank);  // ranking kept up to date from here on
+            if (i%100==0) {
+                String prefix = random_key(random);
+                prefix = prefix.substring(0,Math.min(prefix.length(),random.nextInt(3)));
+                int k = 1 + random.nextInt(10);
+                List<Integer> expected = with_prefix(reference,prefix).values().stream()
+                    .sorted(rank.reversed()).limit(k).collect(Collectors.toList());
+                assertEquals(expected, trie.topK(prefix,k,rank).stream()
+                                           .map(SVPair::val).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    void ConcurrentStringTrie_agrees_with_TreeMap() {
+        var trie = new ConcurrentStringTrie<Integer>();
+        var reference = new TreeMap<String,Integer>();
+        var random = new Random(3);
+        ConcurrentStringTrie<Integer> snapshot = null;
+        Map<String,Integer> at_snapshot = null;
+        for (int i=0;i<50000;i++) {
+            String key = random_key(random);
+            Integer v = i;
+            switch (random.nextInt(4)) {
+                case 0, 1 -> assertEquals(Optional.ofNullable(reference.put(key,v)), trie.set(key,v));
+                case 2 -> assertEquals(Optional.ofNullable(reference.remove(key)), trie.remove(key));
+                default -> assertEquals(Optional.ofNullable(reference.get(key)), trie.get(key));
+            }
+            if (i==25000) {
+                snapshot = trie.snapshot();
+                at_snapshot = new TreeMap<String,Integer>(reference);
+            }
+        }
+        assertEquals(reference.size(), trie.size());
+        assertEquals(reference, contents(trie.stream()));
+        for (int i=0;i<200;i++) {
+            String prefix = random_key(random);
+            var expected = with_prefix(reference,prefix);
+            assertEquals(expected, contents(trie.stream(prefix)));
+            assertEquals(expected.size(), trie.count(prefix));
+        }
+        assertEquals(at_snapshot, contents(snapshot.stream()));
+    }
+
+    @Test
+    void ConcurrentStringTrie_under_concurrent_writers() throws InterruptedException {
+        var trie = new ConcurrentStringTrie<Integer>();
+        int writers = 4, per_writer = 5000;
+        var threads = new ArrayList<Thread>();
+        for (int w=0;w<writers;w++) {
+            final int id = w;
+            threads.add(new Thread(() -> {
+                for (int i=0;i<per_writer;i++) {
+                    trie.set(id+"/"+i, i);
+                    if (i%3==0) trie.remove(id+"/"+(i/2));
+                    trie.and_modify("count", o -> o.orElse(0)+1);
+                }
+            }));
+        }
+        for (var t : threads) t.start();
+        for (var t : threads) t.join();
+        var reference = new TreeMap<String,Integer>();
+        for (int w=0;w<writers;w++)
+            for (int i=0;i<per_writer;i++) {
+                reference.put(w+"/"+i, i);
+                if (i%3==0) reference.remove(w+"/"+(i/2));
+            }
+        reference.put("count", writers*per_writer);
+        assertEquals(reference, contents(trie.stream()));
+    }
+
+    @Test
+    void FrozenStringTrie_agrees_with_TreeMap() throws IOException {
+        var trie = new StringTrie<Integer>();
+        var reference = new TreeMap<String,Integer>();
+        var random = new Random(4);
+        for (int i=0;i<20000;i++) {
+            String key = random_key(random);
+            trie.set(key,i);
+            reference.put(key,i);
+        }
+        var frozen = trie.freeze();
+        check_frozen(reference, frozen, random);
+        var file = Files.createTempFile("trie",".frozen");
+        try {
+            try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                frozen.writeTo(channel, Codec.INT);
+            }
+            check_frozen(reference, FrozenStringTrie.open(file,Codec.INT), random);
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    static void check_frozen(TreeMap<String,Integer> reference, FrozenStringTrie<Integer> frozen,
+                             Random random) {
+        assertEquals(reference.size(), frozen.size());
+        assertEquals(reference, contents(frozen.stream()));
+        for (int i=0;i<2000;i++) {
+            String key = random_key(random);
+            assertEquals(Optional.ofNullable(reference.get(key)), frozen.get(key));
+            if (i%10==0) assertEquals(with_prefix(reference,key), contents(frozen.stream(key)));
+        }
+    }
+
+    @Test
+    void snapshots() throws IOException {
+        var trie = new StringTrie<String>();
+        var random = new Random(5);
+        var reference = new TreeMap<String,String>();
+        for (int i=0;i<20000;i++) {
+            String key = random_key(random);
+            trie.set(key,"v"+i);
+            reference.put(key,"v"+i);
+        }
+        var out = new ByteArrayOutputStream();
+        trie.writeTo(Channels.newChannel(out), Codec.STRING);
+        byte[] bytes = out.toByteArray();
+        var read = StringTrie.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes)), Codec.STRING);
+        assertEquals(reference.size(), read.size());
+        var read_back = new TreeMap<String,String>();
+        read.stream().forEach(p -> read_back.put(p.key(),p.val()));
+        assertEquals(reference, read_back);
+        assertThrows(IOException.class, () -> StringTrie.readFrom(
+            Channels.newChannel(new ByteArrayInputStream(bytes,0,bytes.length/2)), Codec.STRING));
+    }
+
+    @Test
+    void corrupt_snapshots_are_rejected() throws IOException {
+        var trie = new StringTrie<Integer>();
+        trie.set("ab",1);
+        var out = new ByteArrayOutputStream();
+        trie.writeTo(Channels.newChannel(out), Codec.INT);
+        byte[] bytes = out.toByteArray();
+        // header: magic (4), count (8); then shared 0, length 2, 'a', 'b', value
+        byte[] wide_char = new byte[bytes.length+2];
+        System.arraycopy(bytes,0,wide_char,0,14);
+        wide_char[14] = (byte)0x80;  wide_char[15] = (byte)0x80;  wide_char[16] = 0x04;  // 65536
+        System.arraycopy(bytes,15,wide_char,17,bytes.length-15);
+        assertThrows(StreamCorruptedException.class, () -> StringTrie.readFrom(
+            Channels.newChannel(new ByteArrayInputStream(wide_char)), Codec.INT));
+        byte[] bad_shared = bytes.clone();
+        bad_shared[12] = 5;
+        assertThrows(StreamCorruptedException.class, () -> StringTrie.readFrom(
+            Channels.newChannel(new ByteArrayInputStream(bad_shared)), Codec.INT));
+    }
+}